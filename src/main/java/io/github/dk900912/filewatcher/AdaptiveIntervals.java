@@ -0,0 +1,91 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The poll interval and quiet period actually used by the scans, tuned after each scan cycle within the
+ * bounds configured in {@link FileWatcherProperties}:
+ *
+ * <pre>
+ * poll interval : no change ─▶ doubled, up to maxPollInterval
+ *                 changes   ─▶ back to pollInterval
+ * quiet period  : files still changing during n quiet periods ─▶ multiplied by n + 1, up to maxQuietPeriod
+ *                 changes settled at once                     ─▶ halved, down to quietPeriod
+ * </pre>
+ *
+ * Both lower bounds may still be changed at runtime. Without an upper bound, the configured value is used
+ * as is. Only the watch thread tunes the values, which may be read from any thread.
+ *
+ * @author dukui
+ */
+final class AdaptiveIntervals {
+
+    private final AtomicReference<Duration> pollInterval;
+
+    private final AtomicReference<Duration> quietPeriod;
+
+    // Null if the poll interval is fixed
+    private final Duration maxPollInterval;
+
+    // Null if the quiet period is fixed
+    private final Duration maxQuietPeriod;
+
+    private volatile long pollIntervalMillis;
+
+    private volatile long quietPeriodMillis;
+
+    AdaptiveIntervals(AtomicReference<Duration> pollInterval, AtomicReference<Duration> quietPeriod,
+                      Duration maxPollInterval, Duration maxQuietPeriod) {
+        Assert.notNull(pollInterval, "PollInterval must not be null");
+        Assert.notNull(quietPeriod, "QuietPeriod must not be null");
+        this.pollInterval = pollInterval;
+        this.quietPeriod = quietPeriod;
+        this.maxPollInterval = maxPollInterval;
+        this.maxQuietPeriod = maxQuietPeriod;
+    }
+
+    /**
+     * Return the poll interval in milliseconds.
+     *
+     * @return the effective poll interval
+     */
+    long getPollIntervalMillis() {
+        long min = this.pollInterval.get().toMillis();
+        return (this.maxPollInterval != null) ? clamp(this.pollIntervalMillis, min, this.maxPollInterval.toMillis()) : min;
+    }
+
+    /**
+     * Return the quiet period in milliseconds.
+     *
+     * @return the effective quiet period
+     */
+    long getQuietPeriodMillis() {
+        long min = this.quietPeriod.get().toMillis();
+        return (this.maxQuietPeriod != null) ? clamp(this.quietPeriodMillis, min, this.maxQuietPeriod.toMillis()) : min;
+    }
+
+    /**
+     * Tune the intervals after a scan cycle.
+     *
+     * @param changed whether the cycle reported changes
+     * @param unsettled the number of quiet periods during which files were still changing
+     */
+    void onScan(boolean changed, int unsettled) {
+        long pollInterval = getPollIntervalMillis();
+        long quietPeriod = getQuietPeriodMillis();
+        if (!changed) {
+            this.pollIntervalMillis = (pollInterval > Long.MAX_VALUE / 2) ? Long.MAX_VALUE : pollInterval * 2;
+            return;
+        }
+        this.pollIntervalMillis = this.pollInterval.get().toMillis();
+        // Long enough for the next write as long as the last one, so that it settles at once
+        this.quietPeriodMillis = (unsettled > 0) ? quietPeriod * (unsettled + 1) : quietPeriod / 2;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(value, max));
+    }
+}
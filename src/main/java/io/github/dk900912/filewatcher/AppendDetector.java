@@ -0,0 +1,155 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.APPEND;
+
+/**
+ * Tells appends apart from other modifications for the files accepted by its filter, by remembering
+ * a fingerprint of each file as of the last change delivered: its length, and a checksum of its first
+ * and of its last bytes up to that length.
+ *
+ * <pre>
+ *  previous length ──────────────┐
+ *  ┌──────┬─────────────┬────────┬──────────────┐
+ *  │ head │     ...     │  tail  │   appended   │
+ *  └──────┴─────────────┴────────┴──────────────┘
+ *  unchanged head &amp; tail ─▶ APPEND [previous length, current length)
+ *  otherwise              ─▶ MODIFY
+ * </pre>
+ *
+ * A file that shrank, or whose head or tail differs, is reported as a {@link ChangedFile.Type#MODIFY}.
+ * So is the first modification of a file that has not been seen added nor modified since the watcher
+ * started, since there is no fingerprint to compare against yet. Not thread-safe, only ever used by the
+ * watch thread.
+ *
+ * @author dukui
+ */
+final class AppendDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppendDetector.class);
+
+    // Bytes checksummed at each end of the file
+    static final int FINGERPRINT_SIZE = 1024;
+
+    private final FileFilter fileFilter;
+
+    private final Map<File, Fingerprint> fingerprints = new HashMap<>();
+
+    AppendDetector(FileFilter fileFilter) {
+        Assert.notNull(fileFilter, "FileFilter must not be null");
+        this.fileFilter = fileFilter;
+    }
+
+    /**
+     * Return the given changes, the modifications that are appends being replaced with {@link ChangedFile.Type#APPEND}.
+     *
+     * @param changedFiles the changes detected by diffing snapshots
+     * @return the classified changes
+     */
+    ChangedFiles classify(ChangedFiles changedFiles) {
+        Set<ChangedFile> classified = new LinkedHashSet<>();
+        for (ChangedFile changedFile : changedFiles) {
+            classified.add(this.fileFilter.accept(changedFile.getFile())
+                    ? classify(changedFiles.getDirectory(), changedFile)
+                    : changedFile);
+        }
+        return new ChangedFiles(changedFiles.getDirectory(), classified);
+    }
+
+    private ChangedFile classify(File directory, ChangedFile changedFile) {
+        File file = changedFile.getFile();
+        switch (changedFile.getType()) {
+            case ADD -> track(file, changedFile.getCurrentSnapshot());
+            case DELETE -> this.fingerprints.remove(file);
+            case DIRECTORY_DELETED -> {
+                for (ChangedFile member : changedFile.getMembers()) {
+                    this.fingerprints.remove(member.getFile());
+                }
+            }
+            case MOVE -> {
+                Fingerprint fingerprint = this.fingerprints.remove(changedFile.getPreviousFile());
+                if (fingerprint != null) {
+                    this.fingerprints.put(file, fingerprint);
+                }
+            }
+            case MODIFY -> {
+                FileSnapshot previous = changedFile.getPreviousSnapshot();
+                FileSnapshot current = changedFile.getCurrentSnapshot();
+                Fingerprint fingerprint = this.fingerprints.get(file);
+                boolean appended = previous != null && current != null && fingerprint != null
+                        && fingerprint.length == previous.getLength()
+                        && current.getLength() > previous.getLength()
+                        && fingerprint.equals(fingerprint(file, previous.getLength()));
+                track(file, current);
+                if (appended) {
+                    return new ChangedFile(directory, file, APPEND, previous, current);
+                }
+            }
+            default -> {
+                // Already classified, or files of a new directory that are fingerprinted once modified
+            }
+        }
+        return changedFile;
+    }
+
+    private void track(File file, FileSnapshot current) {
+        Fingerprint fingerprint = (current != null) ? fingerprint(file, current.getLength()) : null;
+        if (fingerprint != null) {
+            this.fingerprints.put(file, fingerprint);
+        } else {
+            this.fingerprints.remove(file);
+        }
+    }
+
+    /**
+     * Fingerprint the first {@code length} bytes of the file, {@code null} if it cannot be read.
+     */
+    static Fingerprint fingerprint(File file, long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < length) {
+                // Truncated since the snapshot was taken
+                return null;
+            }
+            int headSize = (int) Math.min(FINGERPRINT_SIZE, length);
+            long tailPosition = Math.max(headSize, length - FINGERPRINT_SIZE);
+            return new Fingerprint(length, checksum(channel, 0, headSize),
+                    checksum(channel, tailPosition, (int) (length - tailPosition)));
+        } catch (IOException ex) {
+            logger.debug("o=={======> Unable to fingerprint '{}', it will be reported as modified", file, ex);
+            return null;
+        }
+    }
+
+    private static long checksum(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.flip());
+        return crc.getValue();
+    }
+
+    record Fingerprint(long length, long head, long tail) {
+    }
+}
@@ -1,9 +1,21 @@
 package io.github.dk900912.filewatcher;
 
+import io.github.dk900912.filewatcher.codec.SnapshotCodecs;
 import io.github.dk900912.filewatcher.filter.FileFilterFactory;
+import io.github.dk900912.filewatcher.filter.GlobFilter;
+import io.github.dk900912.filewatcher.filter.MatchingStrategy;
+import io.github.dk900912.filewatcher.filter.PrefixFilter;
+import io.github.dk900912.filewatcher.filter.SuffixFilter;
+import io.github.dk900912.filewatcher.filter.TempFileFilter;
+import io.github.dk900912.filewatcher.listener.AsyncFileChangeListener;
+import io.github.dk900912.filewatcher.listener.ChangeSignalListener;
 import io.github.dk900912.filewatcher.listener.FileChangeListener;
+import io.github.dk900912.filewatcher.listener.FileChangePublisher;
+import io.github.dk900912.filewatcher.model.ChangedFile;
 import io.github.dk900912.filewatcher.model.ChangedFiles;
 import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.model.IoRateLimiter;
+import io.github.dk900912.filewatcher.model.ScanAbortedException;
 import io.github.dk900912.filewatcher.utils.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,8 +32,21 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -31,11 +56,19 @@ import java.util.concurrent.atomic.AtomicReference;
  * Typical usage for component consumers:
  * <ol>
  *   <li>Construct instance with {@link #FileSystemWatcher(FileWatcherProperties)}</li>
- *   <li>Register listeners via {@link #addListener(FileChangeListener)}</li>
+ *   <li>Register listeners via {@link #addListener(FileChangeListener)} or {@link #addSignalListener(ChangeSignalListener)},
+ *   or subscribe to {@link #changes()}</li>
  *   <li>Start monitoring with {@link #start()}</li>
  *   <li>Stop monitoring with {@link #stop()} when finished</li>
  * </ol>
  * <p>
+ * By default, every watcher scans on its own {@code File Watcher} thread, which mostly sleeps. Applications
+ * running many watchers may instead share a {@link ScheduledExecutorService} between them, see
+ * {@link #FileSystemWatcher(FileWatcherProperties, ScheduledExecutorService)}.
+ * <p>
+ * Directories and listeners may also be added and removed while the watcher runs, see
+ * {@link #addDirectory(File)} and {@link #removeListener(FileChangeListener)}.
+ * <p>
  * Other methods are primarily provided for advanced customization or framework extension:
  * <ol>
  *     <li>{@link #replaceFileFilter(FileFilter)}</li>
@@ -50,19 +83,57 @@ public class FileSystemWatcher {
 
     private final Object monitor = new Object();
 
-    private final List<FileChangeListener> listeners = new ArrayList<>();
+    private final List<ListenerRouter.Route> listeners = new ArrayList<>();
+
+    // Wrapped for dispatch, in the same order as the listeners, while started
+    private final List<ListenerRouter.Route> dispatchRoutes = new ArrayList<>();
 
-    private final Map<File, DirectorySnapshot> directories = new HashMap<>();
+    // Read by the watcher on every change
+    private final List<ChangeSignalListener> signalListeners = new CopyOnWriteArrayList<>();
+
+    private final Map<File, DirectorySnapshot> directories = new LinkedHashMap<>();
+
+    // Directories added while started whose baseline snapshot is still being taken, by taking thread
+    private final Map<File, Thread> pendingDirectories = new HashMap<>();
 
     private final FileWatcherProperties properties;
 
     private Thread watchThread;
 
+    // Null if scanning on a dedicated thread
+    private final ScheduledExecutorService scheduler;
+
+    // The watcher running, on the watch thread or on the scheduler, if any
+    private Watcher watcher;
+
     private FileFilter fileFilter;
 
     private SnapshotStateRepository snapshotStateRepository;
 
+    private final FileChangePublisher changePublisher;
+
+    private final AdaptiveIntervals intervals;
+
+    private final IoRateLimiter rateLimiter;
+
+    private final AtomicLong budgetOverruns = new AtomicLong();
+
     public FileSystemWatcher(FileWatcherProperties properties) {
+        this(properties, null);
+    }
+
+    /**
+     * Create a watcher scanning on the given scheduler rather than on a dedicated thread, so that many
+     * watchers can share a small pool. Each scan cycle is split into short tasks, one per snapshot, the
+     * waits of the {@link FileWatcherProperties#getPollInterval() poll interval} and the
+     * {@link FileWatcherProperties#getQuietPeriod() quiet period} being delays between them rather than
+     * sleeping threads; tasks of all watchers run in the order they are due. The scheduler is left to its
+     * owner, which must keep it running as long as watchers use it.
+     *
+     * @param properties the properties
+     * @param scheduler the scheduler running the scans, {@code null} for a dedicated thread
+     */
+    public FileSystemWatcher(FileWatcherProperties properties, ScheduledExecutorService scheduler) {
         Assert.notNull(properties, "FileWatcherProperties must not be null");
         Assert.isTrue(properties.getDirectories() != null && !properties.getDirectories().isEmpty(),
                 "FileWatcherProperties.directories must not be empty");
@@ -73,20 +144,232 @@ public class FileSystemWatcher {
         }
         this.fileFilter = FileFilterFactory.create(properties);
         if (properties.getSnapshotState().getEnabled()) {
-            this.snapshotStateRepository = new LocalSnapshotStateRepository(Paths.get(properties.getSnapshotState().getRepository()));
+            this.snapshotStateRepository = new LocalSnapshotStateRepository(Paths.get(properties.getSnapshotState().getRepository()),
+                    SnapshotCodecs.create(properties.getSnapshotCodec(), properties.getSnapshotCompressionLevel()));
         } else {
             this.snapshotStateRepository = SnapshotStateRepository.NONE;
         }
+        this.changePublisher = new FileChangePublisher(properties.getSubscriberBufferLimit());
+        this.scheduler = scheduler;
+        this.intervals = new AdaptiveIntervals(properties.getPollInterval(), properties.getQuietPeriod(),
+                properties.getMaxPollInterval(), properties.getMaxQuietPeriod());
+        this.rateLimiter = (properties.getIoBudget() != null)
+                ? new IoRateLimiter(properties.getIoBudget())
+                : IoRateLimiter.UNLIMITED;
     }
 
     public void addListener(FileChangeListener fileChangeListener) {
         Assert.notNull(fileChangeListener, "FileChangeListener must not be null");
+        addRoute(new ListenerRouter.Route(fileChangeListener, null));
+    }
+
+    /**
+     * Register a listener receiving only the changes matching the given strategy, on top of the global
+     * {@link FileFilter}.
+     *
+     * @param fileChangeListener the listener
+     * @param matchingStrategy the matching strategy
+     * @param patterns the patterns of the strategy, e.g. suffixes or directory prefixes
+     */
+    public void addListener(FileChangeListener fileChangeListener, MatchingStrategy matchingStrategy, Set<String> patterns) {
+        addListener(fileChangeListener, FileFilterFactory.create(matchingStrategy, patterns));
+    }
+
+    /**
+     * Register a listener receiving only the changes accepted by the given filter, on top of the global
+     * {@link FileFilter}. The filters of all listeners are compiled into a single routing index, so
+     * registering many listeners does not multiply the matching work; {@link SuffixFilter}s and
+     * {@link PrefixFilter}s benefit most from it.
+     *
+     * @param fileChangeListener the listener
+     * @param fileFilter the filter selecting the changes the listener receives
+     */
+    public void addListener(FileChangeListener fileChangeListener, FileFilter fileFilter) {
+        Assert.notNull(fileChangeListener, "FileChangeListener must not be null");
+        Assert.notNull(fileFilter, "FileFilter must not be null");
+        addRoute(new ListenerRouter.Route(fileChangeListener, fileFilter));
+    }
+
+    /**
+     * Register the listener, and if the watcher is running, have it dispatch to the listener from the
+     * next change set on.
+     */
+    private void addRoute(ListenerRouter.Route route) {
+        synchronized (this.monitor) {
+            this.listeners.add(route);
+            if (this.watcher != null) {
+                this.dispatchRoutes.add(createDispatchRoute(route));
+                this.watcher.setRouter(createRouter());
+            }
+        }
+    }
+
+    /**
+     * Unregister every registration of the given listener, whether the watcher is running or not. A
+     * change set being dispatched may still reach it, later ones do not. If asynchronous dispatch is
+     * enabled, the changes still queued for the listener are dropped.
+     *
+     * @param fileChangeListener the listener
+     * @return whether the listener was registered
+     */
+    public boolean removeListener(FileChangeListener fileChangeListener) {
+        Assert.notNull(fileChangeListener, "FileChangeListener must not be null");
+        synchronized (this.monitor) {
+            boolean removed = false;
+            for (int i = this.listeners.size() - 1; i >= 0; i--) {
+                if (this.listeners.get(i).listener() != fileChangeListener) {
+                    continue;
+                }
+                removed = true;
+                this.listeners.remove(i);
+                if (this.watcher != null && this.dispatchRoutes.remove(i).listener() instanceof AsyncDispatchListener asyncListener) {
+                    asyncListener.close();
+                }
+            }
+            if (removed && this.watcher != null) {
+                this.watcher.setRouter(createRouter());
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Register a listener notified with the number of changed files of each watched directory only.
+     * As long as no other listener is registered and nobody subscribes to {@link #changes()} or
+     * {@link #changeSets()}, scans merely count changes instead of building them. Signal listeners are
+     * called on the watch thread, so they should return quickly.
+     *
+     * @param changeSignalListener the listener
+     */
+    public void addSignalListener(ChangeSignalListener changeSignalListener) {
+        Assert.notNull(changeSignalListener, "ChangeSignalListener must not be null");
+        this.signalListeners.add(changeSignalListener);
+    }
+
+    /**
+     * Unregister the given signal listener, whether the watcher is running or not.
+     *
+     * @param changeSignalListener the listener
+     * @return whether the listener was registered
+     */
+    public boolean removeSignalListener(ChangeSignalListener changeSignalListener) {
+        Assert.notNull(changeSignalListener, "ChangeSignalListener must not be null");
+        return this.signalListeners.remove(changeSignalListener);
+    }
+
+    /**
+     * Watch one more directory, with its own {@link FileWatcherProperties#getDirectorySettings() settings}
+     * if any are configured for it, even though it was not among the directories initially. If the watcher
+     * is running, the baseline snapshot of the directory is taken in the background, within the
+     * {@link FileWatcherProperties#getIoBudget() I/O budget} and the {@link FileWatcherProperties#getScanTimeout()
+     * scan timeout}, while the other directories keep being scanned; the directory then joins the scans.
+     * Files written before the walk reaches them are part of the baseline, and only later changes are
+     * reported, so changes that must not be missed should wait for the returned future.
+     * <p>
+     * The future completes once the directory joined the scans, right away if the watcher is not running
+     * since the directory is then snapshotted on start. It is cancelled if the directory is removed or the
+     * watcher stopped before, and completes exceptionally with a {@link ScanAbortedException} if the
+     * baseline snapshot timed out, in which case the directory is not watched.
+     *
+     * @param directory the directory
+     * @return the future completed once the directory is scanned
+     */
+    public CompletableFuture<Void> addDirectory(File directory) {
+        Assert.notNull(directory, "Directory must not be null");
+        Assert.isTrue(!directory.isFile(), () -> "Directory '" + directory + "' must not be a file");
         synchronized (this.monitor) {
-            checkNotStarted();
-            this.listeners.add(fileChangeListener);
+            Assert.isTrue(!this.directories.containsKey(directory), () -> "Directory '" + directory + "' is already watched");
+            this.directories.put(directory, null);
+            if (this.watcher == null) {
+                // Snapshotted on start
+                return CompletableFuture.completedFuture(null);
+            }
+            Watcher watcher = this.watcher;
+            CompletableFuture<Void> joined = new CompletableFuture<>();
+            Thread thread = Thread.ofVirtual().name(this.properties.getName() + " Baseline").unstarted(() -> {
+                DirectorySnapshot baseline;
+                try {
+                    baseline = new DirectorySnapshot(directory, this.rateLimiter, this.properties.getScanTimeout());
+                } catch (ScanAbortedException ex) {
+                    synchronized (this.monitor) {
+                        // Unless interrupted by a removal or a stop
+                        if (this.pendingDirectories.remove(directory, Thread.currentThread())) {
+                            this.directories.remove(directory);
+                            logger.warn("Baseline snapshot of {} abandoned, the directory is not watched: {}", directory, ex.getMessage());
+                            joined.completeExceptionally(ex);
+                            return;
+                        }
+                    }
+                    joined.cancel(false);
+                    return;
+                }
+                synchronized (this.monitor) {
+                    // Unless removed or stopped in the meantime
+                    if (this.pendingDirectories.remove(directory, Thread.currentThread()) && this.watcher == watcher) {
+                        FileWatcherProperties.DirectorySettings settings = getDirectorySettings().get(directory);
+                        watcher.addDirectory(directory, baseline,
+                                (settings != null) ? createScanGroup(directory, settings, false) : null, joined);
+                        return;
+                    }
+                }
+                joined.cancel(false);
+            });
+            this.pendingDirectories.put(directory, thread);
+            thread.start();
+            return joined;
         }
     }
 
+    /**
+     * Stop watching the given directory, at least one directory remaining. If the watcher is running, the
+     * directory leaves the scans before the next step, a scan in progress possibly reporting it a last time;
+     * a baseline snapshot still being taken is abandoned.
+     *
+     * @param directory the directory
+     * @return whether the directory was watched
+     */
+    public boolean removeDirectory(File directory) {
+        Assert.notNull(directory, "Directory must not be null");
+        synchronized (this.monitor) {
+            if (!this.directories.containsKey(directory)) {
+                return false;
+            }
+            Assert.state(this.directories.size() - this.pendingDirectories.size() > 1 || this.pendingDirectories.containsKey(directory),
+                    "At least one directory must remain watched");
+            this.directories.remove(directory);
+            Thread baselineThread = this.pendingDirectories.remove(directory);
+            if (baselineThread != null) {
+                baselineThread.interrupt();
+            } else if (this.watcher != null) {
+                this.watcher.removeDirectory(directory);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Return a publisher of the individual changes, honouring subscriber demand. Unlike listeners,
+     * subscribers may come and go at any time; changes pending for a subscriber that stops requesting
+     * are coalesced by path, up to {@link FileWatcherProperties#getSubscriberBufferLimit()} files.
+     *
+     * @return the publisher
+     * @see FileChangePublisher
+     */
+    public Flow.Publisher<ChangedFile> changes() {
+        return this.changePublisher.files();
+    }
+
+    /**
+     * Return a publisher of change sets, honouring subscriber demand; each item holds all changes
+     * pending for the subscriber when it was requested.
+     *
+     * @return the publisher
+     * @see FileChangePublisher
+     */
+    public Flow.Publisher<Set<ChangedFiles>> changeSets() {
+        return this.changePublisher.changeSets();
+    }
+
     /**
      * Typically, there is no need to replace the file filter, as a default {@link FileFilter}
      * is automatically provided based on the configuration in {@link FileWatcherProperties}.
@@ -114,23 +397,29 @@ public class FileSystemWatcher {
         }
     }
 
-    private void checkNotStarted() {
-        synchronized (this.monitor) {
-            Assert.state(this.watchThread == null, "FileSystemWatcher already started");
-        }
-    }
-
     /**
      * Start monitoring the directory for changes.
      */
     public void start() {
         synchronized (this.monitor) {
-            createOrRestoreInitialSnapshots();
-            if (this.watchThread == null) {
-                Map<File, DirectorySnapshot> localDirectories = new HashMap<>(this.directories);
-                Watcher watcher = new Watcher(this.properties.getRemainingScans(), new ArrayList<>(this.listeners), this.fileFilter,
-                        this.properties.getPollInterval(), this.properties.getQuietPeriod(),
-                        localDirectories, this.snapshotStateRepository);
+            boolean restored = createOrRestoreInitialSnapshots();
+            if (this.watcher == null) {
+                Map<File, DirectorySnapshot> localDirectories = new LinkedHashMap<>(this.directories);
+                this.dispatchRoutes.clear();
+                for (ListenerRouter.Route route : this.listeners) {
+                    this.dispatchRoutes.add(createDispatchRoute(route));
+                }
+                Watcher watcher = new Watcher(this.properties.getRemainingScans(), createRouter(), createScanFilter(),
+                        createScanGroups(restored), this.rateLimiter, this.budgetOverruns, this.properties.getScanTimeout(),
+                        localDirectories, this.snapshotStateRepository, this.properties.getDetectMoves(),
+                        this.properties.getDirectoryEvents(), createAppendDetector(),
+                        this.signalListeners, this.changePublisher,
+                        this.properties.getSharedScans() ? SharedScanEngine.INSTANCE : null);
+                this.watcher = watcher;
+                if (this.scheduler != null) {
+                    watcher.schedule(this.scheduler);
+                    return;
+                }
                 this.watchThread = new Thread(watcher);
                 this.watchThread.setName(this.properties.getName());
                 this.watchThread.setDaemon(this.properties.getDaemon());
@@ -139,13 +428,219 @@ public class FileSystemWatcher {
         }
     }
 
+    /**
+     * Return the groups of directories scanned together: one per directory having its own
+     * {@link FileWatcherProperties#getDirectorySettings() settings}, and one shared by all the others,
+     * first, even if empty, for the directories added later on.
+     */
+    private List<ScanGroup> createScanGroups(boolean reconcile) {
+        Map<File, FileWatcherProperties.DirectorySettings> directorySettings = getDirectorySettings();
+        List<ScanGroup> groups = new ArrayList<>();
+        List<File> shared = new ArrayList<>();
+        for (File directory : this.directories.keySet()) {
+            FileWatcherProperties.DirectorySettings settings = directorySettings.get(directory);
+            if (settings == null) {
+                shared.add(directory);
+            } else {
+                groups.add(createScanGroup(directory, settings, reconcile));
+            }
+        }
+        ScanGroup group = new ScanGroup(shared, this.intervals, 0, 1, reconcile);
+        group.phaseOffset = this.properties.getPhaseOffset();
+        group.jitter = this.properties.getJitter();
+        groups.addFirst(group);
+        return groups;
+    }
+
+    private ScanGroup createScanGroup(File directory, FileWatcherProperties.DirectorySettings settings, boolean reconcile) {
+        AdaptiveIntervals intervals = new AdaptiveIntervals(
+                (settings.getPollInterval() != null) ? new AtomicReference<>(settings.getPollInterval()) : this.properties.getPollInterval(),
+                (settings.getQuietPeriod() != null) ? new AtomicReference<>(settings.getQuietPeriod()) : this.properties.getQuietPeriod(),
+                this.properties.getMaxPollInterval(), this.properties.getMaxQuietPeriod());
+        ScanGroup group = new ScanGroup(new ArrayList<>(List.of(directory)), intervals, settings.getPriority(), settings.getSlices(), reconcile);
+        group.phaseOffset = (settings.getPhaseOffset() != null) ? settings.getPhaseOffset() : this.properties.getPhaseOffset();
+        group.jitter = (settings.getJitter() != null) ? settings.getJitter() : this.properties.getJitter();
+        if (!settings.getTriggerPatterns().isEmpty()) {
+            group.triggers = new GlobFilter(settings.getTriggerPatterns());
+        }
+        return group;
+    }
+
+    /**
+     * Return the {@link FileWatcherProperties#getDirectorySettings() settings} by directory.
+     */
+    private Map<File, FileWatcherProperties.DirectorySettings> getDirectorySettings() {
+        Map<File, FileWatcherProperties.DirectorySettings> directorySettings = new HashMap<>();
+        this.properties.getDirectorySettings().forEach((directory, settings) -> directorySettings.put(new File(directory), settings));
+        return directorySettings;
+    }
+
+    /**
+     * Return the poll interval currently used, between {@link FileWatcherProperties#getPollInterval()} and
+     * {@link FileWatcherProperties#getMaxPollInterval()}: it backs off while nothing changes and returns to
+     * the former as soon as changes are detected.
+     *
+     * @return the effective poll interval
+     */
+    public Duration getEffectivePollInterval() {
+        return Duration.ofMillis(this.intervals.getPollIntervalMillis());
+    }
+
+    /**
+     * Return the quiet period currently used, between {@link FileWatcherProperties#getQuietPeriod()} and
+     * {@link FileWatcherProperties#getMaxQuietPeriod()}: it stretches when files are still being written
+     * after a quiet period, and shrinks back when they are not.
+     *
+     * @return the effective quiet period
+     */
+    public Duration getEffectiveQuietPeriod() {
+        return Duration.ofMillis(this.intervals.getQuietPeriodMillis());
+    }
+
+    /**
+     * Return the number of snapshots that took longer than their poll interval because of the
+     * {@link FileWatcherProperties#getIoBudget() I/O budget}, each of them being logged as well. A growing
+     * count means the budget is too small for the directories to be scanned at the configured rate.
+     *
+     * @return the number of scans overrun because of the I/O budget
+     */
+    public long getBudgetOverrunCount() {
+        return this.budgetOverruns.get();
+    }
+
+    /**
+     * Return the number of change sets waiting to be delivered to the given listener, summed over its
+     * registrations, if {@link FileWatcherProperties#getAsyncListeners() asynchronous dispatch} is enabled.
+     *
+     * @param fileChangeListener the listener
+     * @return the queue depth, see {@link AsyncFileChangeListener#getQueueDepth()}, zero if the listener is
+     * not registered, called synchronously or the watcher is not running
+     */
+    public int getQueueDepth(FileChangeListener fileChangeListener) {
+        int queueDepth = 0;
+        for (AsyncFileChangeListener asyncListener : getAsyncListeners(fileChangeListener)) {
+            queueDepth += asyncListener.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Return the number of distinct files whose changes are coalesced for the given listener, summed over
+     * its registrations, if asynchronous dispatch is enabled.
+     *
+     * @param fileChangeListener the listener
+     * @return the coalesced file count, see {@link AsyncFileChangeListener#getCoalescedFileCount()}, zero
+     * if the listener is not registered, called synchronously or the watcher is not running
+     */
+    public int getCoalescedFileCount(FileChangeListener fileChangeListener) {
+        int coalescedFileCount = 0;
+        for (AsyncFileChangeListener asyncListener : getAsyncListeners(fileChangeListener)) {
+            coalescedFileCount += asyncListener.getCoalescedFileCount();
+        }
+        return coalescedFileCount;
+    }
+
+    /**
+     * Return how long the oldest change not yet delivered to the given listener has been waiting for,
+     * over its registrations, if asynchronous dispatch is enabled.
+     *
+     * @param fileChangeListener the listener
+     * @return the delivery lag, see {@link AsyncFileChangeListener#getLag()}, zero if the listener is not
+     * registered, called synchronously or the watcher is not running
+     */
+    public Duration getLag(FileChangeListener fileChangeListener) {
+        Duration lag = Duration.ZERO;
+        for (AsyncFileChangeListener asyncListener : getAsyncListeners(fileChangeListener)) {
+            Duration current = asyncListener.getLag();
+            if (current.compareTo(lag) > 0) {
+                lag = current;
+            }
+        }
+        return lag;
+    }
+
+    /**
+     * Return the wrappers the watcher dispatches to the given listener through, one per registration.
+     */
+    private List<AsyncFileChangeListener> getAsyncListeners(FileChangeListener fileChangeListener) {
+        Assert.notNull(fileChangeListener, "FileChangeListener must not be null");
+        List<AsyncFileChangeListener> asyncListeners = new ArrayList<>();
+        synchronized (this.monitor) {
+            if (this.watcher == null) {
+                return asyncListeners;
+            }
+            for (int i = 0; i < this.listeners.size(); i++) {
+                if (this.listeners.get(i).listener() == fileChangeListener
+                        && this.dispatchRoutes.get(i).listener() instanceof AsyncDispatchListener asyncListener) {
+                    asyncListeners.add(asyncListener);
+                }
+            }
+        }
+        return asyncListeners;
+    }
+
+    /**
+     * Return the router the watcher dispatches through, to the listeners currently registered. Guarded
+     * by the monitor.
+     */
+    private ListenerRouter createRouter() {
+        List<ListenerRouter.Route> routes = new ArrayList<>(this.dispatchRoutes.size() + 1);
+        routes.addAll(this.dispatchRoutes);
+        // Never blocks, subscribers are signalled on their own
+        routes.add(new ListenerRouter.Route(this.changePublisher, null));
+        return new ListenerRouter(routes);
+    }
+
+    /**
+     * Return the route of the given listener wrapped in an {@link AsyncFileChangeListener} if asynchronous
+     * dispatch is enabled; the wrapper is closed once the listener is removed or the watcher stops.
+     */
+    private ListenerRouter.Route createDispatchRoute(ListenerRouter.Route route) {
+        return this.properties.getAsyncListeners()
+                ? new ListenerRouter.Route(new AsyncDispatchListener(route.listener(), this.properties.getListenerQueueCapacity()), route.filter())
+                : route;
+    }
+
+    /**
+     * Return the filter applied while scanning: the file filter, temporary files excluded if any
+     * {@link FileWatcherProperties#getTempFilePatterns() pattern} is configured.
+     */
+    private FileFilter createScanFilter() {
+        Set<String> tempFilePatterns = this.properties.getTempFilePatterns();
+        return tempFilePatterns.isEmpty() ? this.fileFilter : new TempFileFilter(this.fileFilter, tempFilePatterns);
+    }
+
+    /**
+     * Return the detector of appends to the files selected by {@link FileWatcherProperties#getAppendDetection()},
+     * {@code null} if append detection is disabled.
+     */
+    private AppendDetector createAppendDetector() {
+        Map<MatchingStrategy, Set<String>> appendDetection = this.properties.getAppendDetection();
+        if (appendDetection.isEmpty()) {
+            return null;
+        }
+        Map.Entry<MatchingStrategy, Set<String>> strategy = appendDetection.entrySet().iterator().next();
+        return new AppendDetector(FileFilterFactory.create(strategy.getKey(), strategy.getValue()));
+    }
+
+    /**
+     * Create the baseline snapshots, preferring those previously saved by the {@link SnapshotStateRepository}.
+     *
+     * @return whether at least one baseline snapshot was restored
+     */
     @SuppressWarnings("unchecked")
-    private void createOrRestoreInitialSnapshots() {
+    private boolean createOrRestoreInitialSnapshots() {
         Map<File, DirectorySnapshot> restored = (Map<File, DirectorySnapshot>) this.snapshotStateRepository.restore();
+        AtomicBoolean anyRestored = new AtomicBoolean();
         this.directories.replaceAll((f, v) -> {
             DirectorySnapshot restoredSnapshot = (restored != null) ? restored.get(f) : null;
-            return (restoredSnapshot != null) ? restoredSnapshot : new DirectorySnapshot(f);
+            if (restoredSnapshot != null) {
+                anyRestored.set(true);
+                return restoredSnapshot;
+            }
+            return new DirectorySnapshot(f);
         });
+        return anyRestored.get();
     }
 
     /**
@@ -162,90 +657,586 @@ public class FileSystemWatcher {
      */
     void stopAfter(int remainingScans) {
         Thread thread;
+        Watcher watcher;
         synchronized (this.monitor) {
             thread = this.watchThread;
-            if (thread != null) {
+            watcher = this.watcher;
+            if (watcher != null) {
                 this.properties.getRemainingScans().set(remainingScans);
-                if (remainingScans <= 0) {
+                if (remainingScans <= 0 && thread != null) {
                     thread.interrupt();
+                } else if (remainingScans <= 0) {
+                    watcher.interrupt();
                 }
             }
             this.watchThread = null;
+            this.watcher = null;
+            // Their baseline is taken on the next start
+            this.pendingDirectories.values().forEach(Thread::interrupt);
+            this.pendingDirectories.clear();
         }
-        if (thread != null && Thread.currentThread() != thread) {
-            try {
-                thread.join();
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
+        try {
+            if (thread != null) {
+                if (Thread.currentThread() != thread) {
+                    thread.join();
+                }
+            } else if (watcher != null) {
+                watcher.awaitTermination();
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Marks the {@link AsyncFileChangeListener}s created by the watcher itself.
+     */
+    private static final class AsyncDispatchListener extends AsyncFileChangeListener {
+
+        private AsyncDispatchListener(FileChangeListener delegate, int capacity) {
+            super(delegate, capacity);
+        }
+    }
+
+    /**
+     * The directories scanned together, on the same cadence, and the state of their current scan cycle.
+     */
+    private static final class ScanGroup {
+
+        private final List<File> directories;
+
+        private final AdaptiveIntervals intervals;
+
+        private final int priority;
+
+        private final int slices;
+
+        // The slice scanned by the current cycle
+        private int slice;
+
+        // Whether the next scan cycle should reconcile against restored snapshots instead of walking
+        private boolean reconcile;
+
+        // Snapshots of the current cycle: the ones taken last, and the ones before, null before the first
+        private Map<File, DirectorySnapshot> previous;
+
+        private Map<File, DirectorySnapshot> current;
+
+        // Number of snapshots taken during the current cycle
+        private int snapshots;
+
+        // Number of quiet periods of the current cycle during which files kept changing
+        private int unsettled;
+
+        // System.nanoTime() at which the next step is due
+        private long due;
+
+        // Delay of the first cycle only
+        private Duration phaseOffset = Duration.ZERO;
+
+        // Width of the random variation of each cycle's wait, centered so as to keep the average
+        private Duration jitter = Duration.ZERO;
+
+        // The filter accepting the trigger files gating the scans, null to always scan
+        private FileFilter triggers;
+
+        private boolean started;
+
+        private ScanGroup(List<File> directories, AdaptiveIntervals intervals, int priority, int slices, boolean reconcile) {
+            this.directories = directories;
+            this.intervals = intervals;
+            this.priority = priority;
+            this.slices = slices;
+            this.reconcile = reconcile;
+        }
+
+        private long getDelayNanos() {
+            return this.due - System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return (this.slices > 1) ? this.directories + " (slice " + (this.slice + 1) + "/" + this.slices + ")" : this.directories.toString();
+        }
+    }
+
+    /**
+     * Scans the directories in cycles, each one waiting for the poll interval, then taking snapshots a
+     * quiet period apart until two consecutive ones are identical, and reporting the changes:
+     *
+     * <pre>
+     *        ┌───────────────────────────── next cycle ─────────────────────────────┐
+     *        ▼                                                                      │
+     * begin() ── poll interval - quiet period ──▶ step() ── quiet period ──▶ step() ┤
+     *                                               ▲                               │ changing
+     *                                               └───────────────────────────────┘
+     * </pre>
+     *
+     * Each {@link ScanGroup} goes through its own cycles, the next step due being run first; once steps
+     * fall behind, the one of the highest priority among those overdue. The steps are driven either by the
+     * {@link #run()} loop of a dedicated thread, sleeping in between, or by a {@link ScheduledExecutorService},
+     * each step being a task scheduling the next one. Directories added or removed while running are queued
+     * and applied before the next step, so that the scan state is only ever touched by one thread at a time.
+     */
     private static final class Watcher implements Runnable {
 
         private final AtomicInteger remainingScans;
 
-        private final List<FileChangeListener> listeners;
+        // Replaced as listeners come and go
+        private volatile ListenerRouter router;
 
         private final FileFilter fileFilter;
 
-        private final AtomicReference<Duration> pollInterval;
+        private final List<ScanGroup> groups;
+
+        private final IoRateLimiter rateLimiter;
+
+        private final AtomicLong budgetOverruns;
 
-        private final AtomicReference<Duration> quietPeriod;
+        // Null if scans are never abandoned
+        private final Duration scanTimeout;
+
+        // Null if the directories are walked for this watcher only
+        private final SharedScanEngine scanEngine;
+
+        // The groups with scans remaining
+        private final List<ScanGroup> active = new ArrayList<>();
 
         private Map<File, DirectorySnapshot> directories;
 
         private final SnapshotStateRepository snapshotStateRepository;
 
+        private final boolean detectMoves;
+
+        private final boolean directoryEvents;
+
+        // Null if append detection is disabled
+        private final AppendDetector appendDetector;
+
+        private final List<ChangeSignalListener> signalListeners;
+
+        // Changes to the directories, applied between steps
+        private final Queue<DirectoryChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        // Scheduled execution only, guarded by this
+        private ScheduledExecutorService scheduler;
+
+        private ScheduledFuture<?> scheduledStep;
+
+        // Incremented on each scheduling, so that a cancelled step that already started gives up
+        private long generation;
+
+        private Thread executingThread;
+
+        private volatile boolean interrupted;
+
+        // The last route of the router, the only consumer of change sets unless listeners are registered
+        private final FileChangePublisher changePublisher;
+
         private Watcher(AtomicInteger remainingScans,
-                        List<FileChangeListener> listeners,
+                        ListenerRouter router,
                         FileFilter fileFilter,
-                        AtomicReference<Duration> pollInterval,
-                        AtomicReference<Duration> quietPeriod,
+                        List<ScanGroup> groups,
+                        IoRateLimiter rateLimiter,
+                        AtomicLong budgetOverruns,
+                        Duration scanTimeout,
                         Map<File, DirectorySnapshot> directories,
-                        SnapshotStateRepository snapshotStateRepository) {
+                        SnapshotStateRepository snapshotStateRepository,
+                        boolean detectMoves,
+                        boolean directoryEvents,
+                        AppendDetector appendDetector,
+                        List<ChangeSignalListener> signalListeners,
+                        FileChangePublisher changePublisher,
+                        SharedScanEngine scanEngine) {
             this.remainingScans = remainingScans;
-            this.listeners = listeners;
+            this.router = router;
             this.fileFilter = fileFilter;
-            this.pollInterval = pollInterval;
-            this.quietPeriod = quietPeriod;
+            this.groups = groups;
+            this.rateLimiter = rateLimiter;
+            this.budgetOverruns = budgetOverruns;
+            this.scanTimeout = scanTimeout;
             this.directories = directories;
             this.snapshotStateRepository = snapshotStateRepository;
+            this.detectMoves = detectMoves;
+            this.directoryEvents = directoryEvents;
+            this.appendDetector = appendDetector;
+            this.signalListeners = signalListeners;
+            this.changePublisher = changePublisher;
+            this.scanEngine = scanEngine;
         }
 
         @Override
         public void run() {
+            register();
+            try {
+                beginAll();
+                while (!this.active.isEmpty()) {
+                    ScanGroup group = next();
+                    try {
+                        long delay = group.getDelayNanos();
+                        if (delay > 0) {
+                            // Another group may be due in the meantime, or directories change
+                            synchronized (this) {
+                                if (this.pendingChanges.isEmpty()) {
+                                    TimeUnit.NANOSECONDS.timedWait(this, delay);
+                                }
+                            }
+                            applyPendingChanges();
+                            continue;
+                        }
+                        step(group);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        // Abandon the cycles
+                        beginAll();
+                    }
+                }
+            } catch (RuntimeException ex) {
+                logger.error("Directory scan failed, the watcher stops", ex);
+            } finally {
+                // As on a scheduler, so that pending changes and registrations are not left behind
+                terminate();
+            }
+        }
+
+        private void beginAll() {
+            this.active.clear();
+            for (ScanGroup group : this.groups) {
+                if (!group.directories.isEmpty()) {
+                    this.active.add(group);
+                    begin(group);
+                }
+            }
+        }
+
+        private void register() {
+            if (this.scanEngine != null) {
+                this.directories.keySet().forEach(this.scanEngine::register);
+            }
+        }
+
+        void setRouter(ListenerRouter router) {
+            this.router = router;
+        }
+
+        /**
+         * Have the given directory, whose baseline snapshot is given, join the scans: in its own group if
+         * given one, otherwise in the shared group. The future is completed once it joined, or cancelled if
+         * the watcher terminates before.
+         */
+        void addDirectory(File directory, DirectorySnapshot baseline, ScanGroup group, CompletableFuture<Void> joined) {
+            changeDirectories(() -> {
+                if (this.directories.containsKey(directory)) {
+                    joined.complete(null);
+                    return;
+                }
+                Map<File, DirectorySnapshot> updated = new LinkedHashMap<>(this.directories);
+                updated.put(directory, baseline);
+                this.directories = updated;
+                this.snapshotStateRepository.save(updated);
+                if (this.scanEngine != null) {
+                    this.scanEngine.register(directory);
+                }
+                ScanGroup target = (group != null) ? group : this.groups.getFirst();
+                if (group != null) {
+                    this.groups.add(group);
+                } else {
+                    target.directories.add(directory);
+                }
+                if (this.active.contains(target)) {
+                    // Only the next snapshots include the directory
+                    restart(target);
+                } else {
+                    this.active.add(target);
+                    begin(target);
+                }
+                logger.debug("o=={======> Directory {} joined the scans of {}", directory, target);
+                joined.complete(null);
+            }, () -> joined.cancel(false));
+        }
+
+        /**
+         * Have the given directory leave the scans, along with its group unless shared with others.
+         */
+        void removeDirectory(File directory) {
+            changeDirectories(() -> {
+                for (ScanGroup group : this.groups) {
+                    if (group.directories.remove(directory)) {
+                        if (group.directories.isEmpty()) {
+                            this.active.remove(group);
+                            if (group != this.groups.getFirst()) {
+                                this.groups.remove(group);
+                            }
+                        } else {
+                            restart(group);
+                        }
+                        break;
+                    }
+                }
+                if (this.directories.containsKey(directory) && this.scanEngine != null) {
+                    this.scanEngine.unregister(directory);
+                }
+                Map<File, DirectorySnapshot> updated = new LinkedHashMap<>(this.directories);
+                updated.remove(directory);
+                this.directories = updated;
+                this.snapshotStateRepository.save(updated);
+                logger.debug("o=={======> Directory {} left the scans", directory);
+            }, () -> {});
+        }
+
+        /**
+         * Queue the given change to the directories, waking up the watcher so that it is applied right away
+         * if no step is running, or discard it if the watcher already terminated.
+         */
+        private void changeDirectories(Runnable change, Runnable discard) {
+            synchronized (this) {
+                if (this.terminated.getCount() == 0) {
+                    discard.run();
+                    return;
+                }
+                this.pendingChanges.add(new DirectoryChange(change, discard));
+                if (this.scheduler == null) {
+                    notifyAll();
+                } else if (this.executingThread == null) {
+                    this.scheduledStep.cancel(false);
+                    scheduleStep(true);
+                }
+            }
+        }
+
+        private void applyPendingChanges() {
+            DirectoryChange change;
+            while ((change = this.pendingChanges.poll()) != null) {
+                change.apply().run();
+            }
+        }
+
+        /**
+         * Start the current cycle of the group over with new snapshots, its next step staying due as it was.
+         */
+        private void restart(ScanGroup group) {
+            group.previous = null;
+            group.current = null;
+            group.snapshots = 0;
+            group.unsettled = 0;
+        }
+
+        /**
+         * Begin a new scan cycle of the group, if any scan remains, otherwise deactivate it.
+         */
+        private void begin(ScanGroup group) {
+            restart(group);
             int remainingScans = this.remainingScans.get();
-            while (remainingScans > 0 || remainingScans == -1) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("o=={======> Starting directory scan for file changes. remaining-scans:{}, poll-interval:{} ms, quiet-period:{} ms", remainingScans, this.pollInterval.get().toMillis(), this.quietPeriod.get().toMillis());
+            if (remainingScans <= 0 && remainingScans != -1) {
+                this.active.remove(group);
+                return;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("o=={======> Starting directory scan for file changes. directories:{}, remaining-scans:{}, poll-interval:{} ms, quiet-period:{} ms", group, remainingScans, group.intervals.getPollIntervalMillis(), group.intervals.getQuietPeriodMillis());
+            }
+            if (remainingScans > 0) {
+                this.remainingScans.decrementAndGet();
+            }
+            long delay = TimeUnit.MILLISECONDS.toNanos(group.intervals.getPollIntervalMillis() - group.intervals.getQuietPeriodMillis());
+            if (!group.started) {
+                group.started = true;
+                delay += group.phaseOffset.toNanos();
+            }
+            long jitter = group.jitter.toNanos();
+            if (jitter > 0) {
+                delay += ThreadLocalRandom.current().nextLong(jitter + 1) - jitter / 2;
+            }
+            // The adaptive quiet period may outgrow the poll interval
+            group.due = System.nanoTime() + Math.max(0, delay);
+        }
+
+        /**
+         * Return the group whose step should run next: the one due first, or if several are overdue, the
+         * one of the highest priority among them.
+         */
+        private ScanGroup next() {
+            ScanGroup next = null;
+            for (ScanGroup group : this.active) {
+                if (next == null) {
+                    next = group;
+                } else if (group.getDelayNanos() <= 0 && next.getDelayNanos() <= 0) {
+                    if (group.priority > next.priority || (group.priority == next.priority && group.due - next.due < 0)) {
+                        next = group;
+                    }
+                } else if (group.due - next.due < 0) {
+                    next = group;
                 }
-                try {
-                    if (remainingScans > 0) {
-                        this.remainingScans.decrementAndGet();
+            }
+            return next;
+        }
+
+        /**
+         * Take new snapshots of the group, or, if the last ones did not change during the quiet period,
+         * report their changes and begin the next cycle. A scan or a diff abandoned on interruption or
+         * past the {@link FileWatcherProperties#getScanTimeout() scan timeout} leaves the snapshots as they
+         * were, the next cycle starting over.
+         */
+        private void step(ScanGroup group) {
+            try {
+                advance(group);
+            } catch (ScanAbortedException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    logger.debug("o=={======> Directory scan of {} abandoned on interruption", group);
+                } else {
+                    logger.warn("Directory scan of {} abandoned, it will be retried on the next cycle: {}", group, ex.getMessage());
+                }
+                begin(group);
+            }
+        }
+
+        private void advance(ScanGroup group) {
+            if (group.current != null && !isDifferent(group.previous, group.current)) {
+                // Only the first cycle after a restart benefits from reconciliation, later ones walk as usual
+                group.reconcile = false;
+                boolean changed = isDifferent(getSnapshots(group), group.current);
+                if (changed) {
+                    updateSnapshots(group.current.values());
+                }
+                group.intervals.onScan(changed, group.unsettled);
+                group.slice = (group.slice + 1) % group.slices;
+                begin(group);
+                return;
+            }
+            if (group.snapshots > 1) {
+                // Still changing after a quiet period
+                group.unsettled++;
+            }
+            Map<File, DirectorySnapshot> previous = (group.current != null) ? group.current : getSnapshots(group);
+            long startedAt = System.nanoTime();
+            long throttledBefore = this.rateLimiter.getThrottledNanos();
+            Map<File, DirectorySnapshot> current = getCurrentSnapshots(group, previous);
+            group.previous = previous;
+            group.current = current;
+            checkBudget(group, System.nanoTime() - startedAt, this.rateLimiter.getThrottledNanos() - throttledBefore);
+            group.snapshots++;
+            group.due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(group.intervals.getQuietPeriodMillis());
+        }
+
+        /**
+         * Report a snapshot that exceeded the poll interval while waiting for the I/O budget.
+         */
+        private void checkBudget(ScanGroup group, long elapsedNanos, long throttledNanos) {
+            long pollInterval = group.intervals.getPollIntervalMillis();
+            if (throttledNanos > 0 && TimeUnit.NANOSECONDS.toMillis(elapsedNanos) > pollInterval) {
+                this.budgetOverruns.incrementAndGet();
+                logger.warn("Scanning {} took {} ms, {} ms of which waiting for the I/O budget, longer than the poll interval of {} ms",
+                        group, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), TimeUnit.NANOSECONDS.toMillis(throttledNanos), pollInterval);
+            }
+        }
+
+        private void terminate() {
+            if (this.scanEngine != null) {
+                this.directories.keySet().forEach(this.scanEngine::unregister);
+            }
+            // Only the wrappers created on start, registered listeners are left to their owner
+            for (FileChangeListener listener : this.router.getListeners()) {
+                if (listener instanceof AsyncDispatchListener asyncListener) {
+                    asyncListener.close();
+                }
+            }
+            synchronized (this) {
+                DirectoryChange change;
+                while ((change = this.pendingChanges.poll()) != null) {
+                    change.discard().run();
+                }
+                this.terminated.countDown();
+            }
+        }
+
+        /**
+         * Run the scan cycles on the given scheduler.
+         */
+        void schedule(ScheduledExecutorService scheduler) {
+            synchronized (this) {
+                this.scheduler = scheduler;
+                register();
+                beginAll();
+                scheduleStep(false);
+            }
+        }
+
+        /**
+         * Schedule the next step, or terminate if none remains. Guarded by this.
+         */
+        private void scheduleStep(boolean immediately) {
+            if (this.active.isEmpty()) {
+                terminate();
+                return;
+            }
+            long delay = immediately ? 0 : Math.max(0, next().getDelayNanos());
+            long generation = ++this.generation;
+            try {
+                this.scheduledStep = this.scheduler.schedule(() -> executeStep(generation), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                logger.error("Scheduler rejected the directory scan, the watcher stops", ex);
+                terminate();
+            }
+        }
+
+        private void executeStep(long generation) {
+            synchronized (this) {
+                if (generation != this.generation) {
+                    // Superseded by an interruption
+                    return;
+                }
+                this.executingThread = Thread.currentThread();
+            }
+            try {
+                if (this.interrupted) {
+                    // Like a dedicated thread once interrupted, abandon the cycles
+                    beginAll();
+                } else {
+                    applyPendingChanges();
+                    ScanGroup group = next();
+                    if (group != null && group.getDelayNanos() <= 0) {
+                        step(group);
                     }
-                    scan();
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
                 }
-                remainingScans = this.remainingScans.get();
+            } catch (RuntimeException ex) {
+                logger.error("Directory scan failed, the watcher stops", ex);
+                this.active.clear();
+            } finally {
+                synchronized (this) {
+                    this.executingThread = null;
+                    scheduleStep(this.interrupted || !this.pendingChanges.isEmpty());
+                }
             }
         }
 
-        private void scan() throws InterruptedException {
-            Thread.sleep(this.pollInterval.get().toMillis() - this.quietPeriod.get().toMillis());
-            Map<File, DirectorySnapshot> previous;
-            Map<File, DirectorySnapshot> current = this.directories;
-            do {
-                previous = current;
-                current = getCurrentSnapshots();
-                Thread.sleep(this.quietPeriod.get().toMillis());
-            } while (isDifferent(previous, current));
-            if (isDifferent(this.directories, current)) {
-                updateSnapshots(current.values());
+        /**
+         * Abandon the current cycles as soon as possible, the scheduled counterpart of interrupting the
+         * dedicated thread.
+         */
+        synchronized void interrupt() {
+            this.interrupted = true;
+            if (this.executingThread != null) {
+                // Abandons a running scan, the executor clears the flag before its next task
+                this.executingThread.interrupt();
+            } else if (this.terminated.getCount() > 0) {
+                this.scheduledStep.cancel(false);
+                scheduleStep(true);
             }
         }
 
+        /**
+         * Wait until no scan remains, unless called from a scan itself, e.g. by a listener.
+         */
+        void awaitTermination() throws InterruptedException {
+            synchronized (this) {
+                if (this.executingThread == Thread.currentThread()) {
+                    return;
+                }
+            }
+            this.terminated.await();
+        }
+
         private boolean isDifferent(Map<File, DirectorySnapshot> previous, Map<File, DirectorySnapshot> current) {
             if (!previous.keySet().equals(current.keySet())) {
                 return true;
@@ -260,36 +1251,135 @@ public class FileSystemWatcher {
             return false;
         }
 
-        private Map<File, DirectorySnapshot> getCurrentSnapshots() {
+        /**
+         * Return the snapshots of the group's directories as of the last changes reported.
+         */
+        private Map<File, DirectorySnapshot> getSnapshots(ScanGroup group) {
+            Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
+            for (File directory : group.directories) {
+                snapshots.put(directory, this.directories.get(directory));
+            }
+            return snapshots;
+        }
+
+        private Map<File, DirectorySnapshot> getCurrentSnapshots(ScanGroup group, Map<File, DirectorySnapshot> previous) {
+            long deadline = (this.scanTimeout != null) ? System.nanoTime() + this.scanTimeout.toNanos() : 0;
             Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
-            for (File directory : this.directories.keySet()) {
-                snapshots.put(directory, new DirectorySnapshot(directory));
+            for (File directory : group.directories) {
+                DirectorySnapshot previousSnapshot = previous.get(directory);
+                // What remains of the scan timeout for this directory
+                Duration timeout = (this.scanTimeout != null) ? Duration.ofNanos(deadline - System.nanoTime()) : null;
+                if (group.triggers != null && previousSnapshot != null) {
+                    snapshots.put(directory, DirectorySnapshot.scanTriggered(previousSnapshot, group.triggers, this.rateLimiter, timeout));
+                } else if (group.slices > 1 && previousSnapshot != null) {
+                    snapshots.put(directory, DirectorySnapshot.scanSlice(previousSnapshot, group.slice, group.slices, this.rateLimiter, timeout));
+                } else if (group.reconcile && previousSnapshot != null) {
+                    snapshots.put(directory, DirectorySnapshot.reconcile(previousSnapshot, this.rateLimiter, timeout));
+                } else if (this.scanEngine != null) {
+                    // Recent enough for the quiet period to still tell whether files keep changing
+                    Duration maxAge = Duration.ofMillis(group.intervals.getQuietPeriodMillis() / 2);
+                    snapshots.put(directory, this.scanEngine.snapshot(directory, maxAge, timeout,
+                            () -> new DirectorySnapshot(directory, this.rateLimiter, timeout)));
+                } else {
+                    snapshots.put(directory, new DirectorySnapshot(directory, this.rateLimiter, timeout));
+                }
             }
             return snapshots;
         }
 
+        /**
+         * Give up the diff of an interrupted scan before anything is saved or reported.
+         */
+        private static void checkNotInterrupted(File directory) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ScanAbortedException("Scan interrupted before diffing '" + directory + "'");
+            }
+        }
+
         private void updateSnapshots(Collection<DirectorySnapshot> snapshots) {
-            Map<File, DirectorySnapshot> updated = new LinkedHashMap<>();
+            if (this.router.getListeners().size() == 1 && this.changePublisher.getSubscriptionCount() == 0) {
+                // Nobody needs the changes themselves
+                countChanges(snapshots);
+                return;
+            }
+            Map<File, DirectorySnapshot> updated = new LinkedHashMap<>(this.directories);
             Set<ChangedFiles> changeSet = new LinkedHashSet<>();
+            Map<File, Integer> changeCounts = new LinkedHashMap<>();
             for (DirectorySnapshot snapshot : snapshots) {
+                checkNotInterrupted(snapshot.getDirectory());
                 updated.put(snapshot.getDirectory(), snapshot);
                 DirectorySnapshot previous = this.directories.get(snapshot.getDirectory());
-                ChangedFiles changedFiles = previous.getChangedFiles(snapshot, this.fileFilter);
+                ChangedFiles changedFiles = previous.getChangedFiles(snapshot, this.fileFilter, this.detectMoves, this.directoryEvents);
+                if (this.appendDetector != null) {
+                    changedFiles = this.appendDetector.classify(changedFiles);
+                }
                 if (!changedFiles.getFiles().isEmpty()) {
                     changeSet.add(changedFiles);
+                    changeCounts.put(snapshot.getDirectory(), countChanges(changedFiles));
                 }
             }
             this.directories = updated;
             this.snapshotStateRepository.save(updated);
             if (!changeSet.isEmpty()) {
                 fireListeners(Collections.unmodifiableSet(changeSet));
+                fireSignalListeners(Collections.unmodifiableMap(changeCounts));
+            }
+        }
+
+        /**
+         * Update the snapshots, only counting the changes for the signal listeners.
+         */
+        private void countChanges(Collection<DirectorySnapshot> snapshots) {
+            Map<File, DirectorySnapshot> updated = new LinkedHashMap<>(this.directories);
+            Map<File, Integer> changeCounts = new LinkedHashMap<>();
+            for (DirectorySnapshot snapshot : snapshots) {
+                checkNotInterrupted(snapshot.getDirectory());
+                updated.put(snapshot.getDirectory(), snapshot);
+                int count = this.directories.get(snapshot.getDirectory()).countChanges(snapshot, this.fileFilter);
+                if (count > 0) {
+                    changeCounts.put(snapshot.getDirectory(), count);
+                }
+            }
+            this.directories = updated;
+            this.snapshotStateRepository.save(updated);
+            if (!changeCounts.isEmpty()) {
+                fireSignalListeners(Collections.unmodifiableMap(changeCounts));
             }
         }
 
+        /**
+         * Count the changed files the way {@link DirectorySnapshot#countChanges} does.
+         */
+        private static int countChanges(ChangedFiles changedFiles) {
+            int count = 0;
+            for (ChangedFile changedFile : changedFiles) {
+                if (changedFile.getType().isDirectoryChange()) {
+                    count += changedFile.getMemberCount();
+                } else {
+                    count += (changedFile.getType() == ChangedFile.Type.MOVE) ? 2 : 1;
+                }
+            }
+            return count;
+        }
+
         private void fireListeners(Set<ChangedFiles> changeSet) {
-            for (FileChangeListener listener : this.listeners) {
-                listener.onChange(changeSet);
+            this.router.dispatch(changeSet);
+        }
+
+        private void fireSignalListeners(Map<File, Integer> changeCounts) {
+            for (ChangeSignalListener listener : this.signalListeners) {
+                try {
+                    listener.onSignal(changeCounts);
+                } catch (RuntimeException e) {
+                    logger.error("Listener '{}' failed to handle file changes", listener, e);
+                }
             }
         }
+
+        /**
+         * A change to the directories, and what to do instead if the watcher terminates before applying it.
+         */
+        private record DirectoryChange(Runnable apply, Runnable discard) {
+        }
     }
 }
\ No newline at end of file
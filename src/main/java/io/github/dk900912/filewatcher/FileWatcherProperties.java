@@ -1,5 +1,6 @@
 package io.github.dk900912.filewatcher;
 
+import io.github.dk900912.filewatcher.codec.SnapshotCodecs;
 import io.github.dk900912.filewatcher.filter.MatchingStrategy;
 import io.github.dk900912.filewatcher.utils.Assert;
 import io.github.dk900912.filewatcher.utils.StringUtil;
@@ -38,6 +39,44 @@ public class FileWatcherProperties {
 
     private static final Duration DEFAULT_QUIET_PERIOD = Duration.ofMillis(400);
 
+    private static final String DEFAULT_SNAPSHOT_CODEC = SnapshotCodecs.NONE;
+
+    private static final Boolean DEFAULT_ASYNC_LISTENERS = false;
+
+    private static final Integer DEFAULT_LISTENER_QUEUE_CAPACITY = 64;
+
+    private static final Integer DEFAULT_SUBSCRIBER_BUFFER_LIMIT = 10_000;
+
+    private static final Boolean DEFAULT_DETECT_MOVES = false;
+
+    private static final Boolean DEFAULT_DIRECTORY_EVENTS = false;
+
+    // Temp file coalescing disabled by default
+    private static final Set<String> DEFAULT_TEMP_FILE_PATTERNS = Set.of();
+
+    // Append detection disabled by default
+    private static final Map<MatchingStrategy, Set<String>> DEFAULT_APPEND_DETECTION = Map.of();
+
+    // All directories share the watcher's settings by default
+    private static final Map<String, DirectorySettings> DEFAULT_DIRECTORY_SETTINGS = Map.of();
+
+    private static final Duration DEFAULT_PHASE_OFFSET = Duration.ZERO;
+
+    private static final Duration DEFAULT_JITTER = Duration.ZERO;
+
+    // Every watcher walks its directories on its own by default
+    private static final Boolean DEFAULT_SHARED_SCANS = false;
+
+    private static final SnapshotEncoding DEFAULT_SNAPSHOT_ENCODING = new SnapshotEncoding(null, null);
+
+    private static final DispatchSettings DEFAULT_DISPATCH_SETTINGS = new DispatchSettings(null, null, null);
+
+    private static final ChangeDetection DEFAULT_CHANGE_DETECTION = new ChangeDetection(null, null, null, null);
+
+    private static final ScanScheduling DEFAULT_SCAN_SCHEDULING = new ScanScheduling(null, null, null, null, null);
+
+    private static final ScanResources DEFAULT_SCAN_RESOURCES = new ScanResources(null, null, null);
+
     // Immutable at runtime
     private final Boolean daemon;
 
@@ -53,6 +92,57 @@ public class FileWatcherProperties {
     // Immutable at runtime
     private final SnapshotState snapshotState;
 
+    // Immutable at runtime
+    private final String snapshotCodec;
+
+    // Immutable at runtime, null means the codec's default
+    private final Integer snapshotCompressionLevel;
+
+    // Immutable at runtime
+    private final Boolean asyncListeners;
+
+    // Immutable at runtime
+    private final Integer listenerQueueCapacity;
+
+    // Immutable at runtime
+    private final Integer subscriberBufferLimit;
+
+    // Immutable at runtime
+    private final Boolean detectMoves;
+
+    // Immutable at runtime
+    private final Map<MatchingStrategy, Set<String>> appendDetection;
+
+    // Immutable at runtime
+    private final Boolean directoryEvents;
+
+    // Immutable at runtime
+    private final Set<String> tempFilePatterns;
+
+    // Immutable at runtime, null means a fixed poll interval
+    private final Duration maxPollInterval;
+
+    // Immutable at runtime, null means a fixed quiet period
+    private final Duration maxQuietPeriod;
+
+    // Immutable at runtime
+    private final Map<String, DirectorySettings> directorySettings;
+
+    // Immutable at runtime, null means unlimited
+    private final Integer ioBudget;
+
+    // Immutable at runtime
+    private final Duration phaseOffset;
+
+    // Immutable at runtime
+    private final Duration jitter;
+
+    // Immutable at runtime, null means no limit
+    private final Duration scanTimeout;
+
+    // Immutable at runtime
+    private final Boolean sharedScans;
+
     // Mutable value at runtime
     private final AtomicInteger remainingScans = new AtomicInteger();
 
@@ -111,6 +201,60 @@ public class FileWatcherProperties {
                                  Integer remainingScans,
                                  Duration pollInterval,
                                  Duration quietPeriod) {
+        this(
+            daemon,
+            name,
+            directories,
+            acceptedStrategy,
+            snapshotState,
+            remainingScans,
+            pollInterval,
+            quietPeriod,
+            DEFAULT_SNAPSHOT_ENCODING,
+            DEFAULT_DISPATCH_SETTINGS,
+            DEFAULT_CHANGE_DETECTION,
+            DEFAULT_SCAN_SCHEDULING,
+            DEFAULT_SCAN_RESOURCES
+        );
+    }
+
+    public FileWatcherProperties(Boolean daemon,
+                                 String name,
+                                 List<String> directories,
+                                 Map<MatchingStrategy, Set<String>> acceptedStrategy,
+                                 SnapshotState snapshotState,
+                                 Integer remainingScans,
+                                 Duration pollInterval,
+                                 Duration quietPeriod,
+                                 SnapshotEncoding snapshotEncoding,
+                                 DispatchSettings dispatchSettings,
+                                 ChangeDetection changeDetection,
+                                 ScanScheduling scanScheduling,
+                                 ScanResources scanResources) {
+        // A null group leaves all of its options to their defaults
+        SnapshotEncoding _snapshotEncoding = snapshotEncoding == null ? DEFAULT_SNAPSHOT_ENCODING : snapshotEncoding;
+        DispatchSettings _dispatchSettings = dispatchSettings == null ? DEFAULT_DISPATCH_SETTINGS : dispatchSettings;
+        ChangeDetection _changeDetection = changeDetection == null ? DEFAULT_CHANGE_DETECTION : changeDetection;
+        ScanScheduling _scanScheduling = scanScheduling == null ? DEFAULT_SCAN_SCHEDULING : scanScheduling;
+        ScanResources _scanResources = scanResources == null ? DEFAULT_SCAN_RESOURCES : scanResources;
+        String snapshotCodec = _snapshotEncoding.getSnapshotCodec();
+        Integer snapshotCompressionLevel = _snapshotEncoding.getSnapshotCompressionLevel();
+        Boolean asyncListeners = _dispatchSettings.getAsyncListeners();
+        Integer listenerQueueCapacity = _dispatchSettings.getListenerQueueCapacity();
+        Integer subscriberBufferLimit = _dispatchSettings.getSubscriberBufferLimit();
+        Boolean detectMoves = _changeDetection.getDetectMoves();
+        Map<MatchingStrategy, Set<String>> appendDetection = _changeDetection.getAppendDetection();
+        Boolean directoryEvents = _changeDetection.getDirectoryEvents();
+        Set<String> tempFilePatterns = _changeDetection.getTempFilePatterns();
+        Duration maxPollInterval = _scanScheduling.getMaxPollInterval();
+        Duration maxQuietPeriod = _scanScheduling.getMaxQuietPeriod();
+        Duration phaseOffset = _scanScheduling.getPhaseOffset();
+        Duration jitter = _scanScheduling.getJitter();
+        Map<String, DirectorySettings> directorySettings = _scanScheduling.getDirectorySettings();
+        Integer ioBudget = _scanResources.getIoBudget();
+        Duration scanTimeout = _scanResources.getScanTimeout();
+        Boolean sharedScans = _scanResources.getSharedScans();
+
         this.daemon = daemon == null ? DEFAULT_DAEMON : daemon;
         this.name = !StringUtil.hasLength(name) ? DEFAULT_NAME : name;
         // Validate directories
@@ -161,6 +305,32 @@ public class FileWatcherProperties {
         } else {
             this.snapshotState = DEFAULT_SNAPSHOT_STATE;
         }
+        // Validate snapshotCodec & snapshotCompressionLevel by resolving them once
+        this.snapshotCodec = !StringUtil.hasLength(snapshotCodec) ? DEFAULT_SNAPSHOT_CODEC : snapshotCodec.trim();
+        this.snapshotCompressionLevel = snapshotCompressionLevel;
+        SnapshotCodecs.create(this.snapshotCodec, this.snapshotCompressionLevel);
+        // Validate asyncListeners & listenerQueueCapacity
+        this.asyncListeners = asyncListeners == null ? DEFAULT_ASYNC_LISTENERS : asyncListeners;
+        this.listenerQueueCapacity = listenerQueueCapacity == null ? DEFAULT_LISTENER_QUEUE_CAPACITY : listenerQueueCapacity;
+        Assert.isTrue(this.listenerQueueCapacity > 0, "ListenerQueueCapacity must be positive");
+        // Validate subscriberBufferLimit
+        this.subscriberBufferLimit = subscriberBufferLimit == null ? DEFAULT_SUBSCRIBER_BUFFER_LIMIT : subscriberBufferLimit;
+        Assert.isTrue(this.subscriberBufferLimit > 0, "SubscriberBufferLimit must be positive");
+        this.detectMoves = detectMoves == null ? DEFAULT_DETECT_MOVES : detectMoves;
+        // Validate appendDetection
+        if (appendDetection == null || appendDetection.isEmpty()) {
+            this.appendDetection = DEFAULT_APPEND_DETECTION;
+        } else {
+            Assert.isTrue(appendDetection.size() == 1, "AppendDetection must contain exactly one key");
+            Assert.isTrue(appendDetection.entrySet().stream().allMatch(entry -> ANY.equals(entry.getKey())
+                            || (entry.getValue() != null && !entry.getValue().isEmpty())),
+                    "AppendDetection must contain non-empty value for the key");
+            this.appendDetection = appendDetection;
+        }
+        this.directoryEvents = directoryEvents == null ? DEFAULT_DIRECTORY_EVENTS : directoryEvents;
+        // Validate tempFilePatterns
+        this.tempFilePatterns = tempFilePatterns == null ? DEFAULT_TEMP_FILE_PATTERNS : tempFilePatterns;
+        Assert.isTrue(this.tempFilePatterns.stream().allMatch(StringUtil::hasText), "TempFilePatterns must not contain empty patterns");
 
         // Validate remainingScans
         if (remainingScans != null) {
@@ -180,6 +350,50 @@ public class FileWatcherProperties {
         Assert.isTrue(_pollInterval.toMillis() > _quietPeriod.toMillis(), "PollInterval must be greater than QuietPeriod");
         this.pollInterval.set(_pollInterval);
         this.quietPeriod.set(_quietPeriod);
+
+        // Validate maxPollInterval & maxQuietPeriod
+        this.maxPollInterval = maxPollInterval;
+        this.maxQuietPeriod = maxQuietPeriod;
+        Assert.isTrue(maxPollInterval == null || maxPollInterval.compareTo(_pollInterval) >= 0,
+                "MaxPollInterval must not be less than PollInterval");
+        Assert.isTrue(maxQuietPeriod == null || maxQuietPeriod.compareTo(_quietPeriod) >= 0,
+                "MaxQuietPeriod must not be less than QuietPeriod");
+
+        // Validate directorySettings
+        if (directorySettings == null || directorySettings.isEmpty()) {
+            this.directorySettings = DEFAULT_DIRECTORY_SETTINGS;
+        } else {
+            this.directorySettings = directorySettings.entrySet().stream()
+                    .peek(entry -> {
+                        // Possibly a directory added later on, see FileSystemWatcher#addDirectory
+                        Assert.isTrue(entry.getKey() != null && !entry.getKey().isBlank(),
+                                "DirectorySettings' directory must not be empty");
+                        Assert.notNull(entry.getValue(), "DirectorySettings must not be null");
+                        long directoryPollInterval = (entry.getValue().getPollInterval() != null)
+                                ? entry.getValue().getPollInterval().toMillis() : _pollInterval.toMillis();
+                        long directoryQuietPeriod = (entry.getValue().getQuietPeriod() != null)
+                                ? entry.getValue().getQuietPeriod().toMillis() : _quietPeriod.toMillis();
+                        Assert.isTrue(directoryQuietPeriod > 0 && directoryPollInterval > directoryQuietPeriod,
+                                "DirectorySettings' pollInterval of '" + entry.getKey() + "' must be greater than its positive quietPeriod");
+                    })
+                    .collect(Collectors.toUnmodifiableMap(entry -> entry.getKey().trim(), Map.Entry::getValue));
+        }
+
+        // Validate ioBudget
+        this.ioBudget = ioBudget;
+        Assert.isTrue(ioBudget == null || ioBudget > 0, "IoBudget must be positive");
+
+        // Validate phaseOffset & jitter
+        this.phaseOffset = phaseOffset == null ? DEFAULT_PHASE_OFFSET : phaseOffset;
+        this.jitter = jitter == null ? DEFAULT_JITTER : jitter;
+        Assert.isTrue(!this.phaseOffset.isNegative(), "PhaseOffset must not be negative");
+        Assert.isTrue(!this.jitter.isNegative(), "Jitter must not be negative");
+
+        // Validate scanTimeout
+        this.scanTimeout = scanTimeout;
+        Assert.isTrue(scanTimeout == null || (!scanTimeout.isNegative() && !scanTimeout.isZero()), "ScanTimeout must be positive");
+
+        this.sharedScans = sharedScans == null ? DEFAULT_SHARED_SCANS : sharedScans;
     }
 
     public Boolean getDaemon() {
@@ -202,6 +416,74 @@ public class FileWatcherProperties {
         return this.snapshotState;
     }
 
+    public String getSnapshotCodec() {
+        return this.snapshotCodec;
+    }
+
+    public Integer getSnapshotCompressionLevel() {
+        return this.snapshotCompressionLevel;
+    }
+
+    public Boolean getAsyncListeners() {
+        return this.asyncListeners;
+    }
+
+    public Integer getListenerQueueCapacity() {
+        return this.listenerQueueCapacity;
+    }
+
+    public Integer getSubscriberBufferLimit() {
+        return this.subscriberBufferLimit;
+    }
+
+    public Boolean getDetectMoves() {
+        return this.detectMoves;
+    }
+
+    public Map<MatchingStrategy, Set<String>> getAppendDetection() {
+        return this.appendDetection;
+    }
+
+    public Boolean getDirectoryEvents() {
+        return this.directoryEvents;
+    }
+
+    public Set<String> getTempFilePatterns() {
+        return this.tempFilePatterns;
+    }
+
+    public Duration getMaxPollInterval() {
+        return this.maxPollInterval;
+    }
+
+    public Duration getMaxQuietPeriod() {
+        return this.maxQuietPeriod;
+    }
+
+    public Map<String, DirectorySettings> getDirectorySettings() {
+        return this.directorySettings;
+    }
+
+    public Integer getIoBudget() {
+        return this.ioBudget;
+    }
+
+    public Duration getPhaseOffset() {
+        return this.phaseOffset;
+    }
+
+    public Duration getJitter() {
+        return this.jitter;
+    }
+
+    public Duration getScanTimeout() {
+        return this.scanTimeout;
+    }
+
+    public Boolean getSharedScans() {
+        return this.sharedScans;
+    }
+
     public AtomicInteger getRemainingScans() {
         return this.remainingScans;
     }
@@ -251,4 +533,317 @@ public class FileWatcherProperties {
             return repository;
         }
     }
+
+    /**
+     * How the segments of the snapshot repository are encoded. A {@code null} option takes its default.
+     */
+    public static class SnapshotEncoding {
+
+        private final String snapshotCodec;
+
+        private final Integer snapshotCompressionLevel;
+
+        /**
+         * @param snapshotCodec the name of the codec, {@code null} for {@code none}
+         * @param snapshotCompressionLevel the compression level, {@code null} for the codec's default
+         */
+        public SnapshotEncoding(String snapshotCodec, Integer snapshotCompressionLevel) {
+            this.snapshotCodec = snapshotCodec;
+            this.snapshotCompressionLevel = snapshotCompressionLevel;
+        }
+
+        public String getSnapshotCodec() {
+            return snapshotCodec;
+        }
+
+        public Integer getSnapshotCompressionLevel() {
+            return snapshotCompressionLevel;
+        }
+    }
+
+    /**
+     * How change sets are delivered to the listeners and subscribers. A {@code null} option takes its default.
+     */
+    public static class DispatchSettings {
+
+        private final Boolean asyncListeners;
+
+        private final Integer listenerQueueCapacity;
+
+        private final Integer subscriberBufferLimit;
+
+        /**
+         * @param asyncListeners whether each listener runs on its own executor, {@code null} for {@code false}
+         * @param listenerQueueCapacity the change sets queued per asynchronous listener, {@code null} for {@code 64}
+         * @param subscriberBufferLimit the changed files buffered per subscriber, {@code null} for {@code 10000}
+         */
+        public DispatchSettings(Boolean asyncListeners, Integer listenerQueueCapacity, Integer subscriberBufferLimit) {
+            this.asyncListeners = asyncListeners;
+            this.listenerQueueCapacity = listenerQueueCapacity;
+            this.subscriberBufferLimit = subscriberBufferLimit;
+        }
+
+        public Boolean getAsyncListeners() {
+            return asyncListeners;
+        }
+
+        public Integer getListenerQueueCapacity() {
+            return listenerQueueCapacity;
+        }
+
+        public Integer getSubscriberBufferLimit() {
+            return subscriberBufferLimit;
+        }
+    }
+
+    /**
+     * Which kinds of change are told apart when diffing snapshots. A {@code null} option takes its default.
+     */
+    public static class ChangeDetection {
+
+        private final Boolean detectMoves;
+
+        private final Map<MatchingStrategy, Set<String>> appendDetection;
+
+        private final Boolean directoryEvents;
+
+        private final Set<String> tempFilePatterns;
+
+        /**
+         * @param detectMoves whether an add and a delete of the same file are paired into a move, {@code null} for {@code false}
+         * @param appendDetection the files whose appends are reported as such, {@code null} or empty to disable
+         * @param directoryEvents whether whole directories appearing or vanishing are reported as one event, {@code null} for {@code false}
+         * @param tempFilePatterns the glob patterns of the temporary files ignored by scans, {@code null} or empty to disable
+         */
+        public ChangeDetection(Boolean detectMoves, Map<MatchingStrategy, Set<String>> appendDetection,
+                               Boolean directoryEvents, Set<String> tempFilePatterns) {
+            this.detectMoves = detectMoves;
+            this.appendDetection = appendDetection;
+            this.directoryEvents = directoryEvents;
+            this.tempFilePatterns = tempFilePatterns;
+        }
+
+        public Boolean getDetectMoves() {
+            return detectMoves;
+        }
+
+        public Map<MatchingStrategy, Set<String>> getAppendDetection() {
+            return appendDetection;
+        }
+
+        public Boolean getDirectoryEvents() {
+            return directoryEvents;
+        }
+
+        public Set<String> getTempFilePatterns() {
+            return tempFilePatterns;
+        }
+    }
+
+    /**
+     * When the directories are scanned, beyond the poll interval and quiet period. A {@code null} option
+     * takes its default.
+     */
+    public static class ScanScheduling {
+
+        private final Duration maxPollInterval;
+
+        private final Duration maxQuietPeriod;
+
+        private final Duration phaseOffset;
+
+        private final Duration jitter;
+
+        private final Map<String, DirectorySettings> directorySettings;
+
+        /**
+         * @param maxPollInterval the upper bound of the adaptive poll interval, {@code null} for a fixed one
+         * @param maxQuietPeriod the upper bound of the adaptive quiet period, {@code null} for a fixed one
+         * @param phaseOffset the delay of the first scan, {@code null} for none
+         * @param jitter the width of the random variation of the poll interval, {@code null} for none
+         * @param directorySettings the settings of single directories, {@code null} or empty for none
+         */
+        public ScanScheduling(Duration maxPollInterval, Duration maxQuietPeriod, Duration phaseOffset, Duration jitter,
+                              Map<String, DirectorySettings> directorySettings) {
+            this.maxPollInterval = maxPollInterval;
+            this.maxQuietPeriod = maxQuietPeriod;
+            this.phaseOffset = phaseOffset;
+            this.jitter = jitter;
+            this.directorySettings = directorySettings;
+        }
+
+        public Duration getMaxPollInterval() {
+            return maxPollInterval;
+        }
+
+        public Duration getMaxQuietPeriod() {
+            return maxQuietPeriod;
+        }
+
+        public Duration getPhaseOffset() {
+            return phaseOffset;
+        }
+
+        public Duration getJitter() {
+            return jitter;
+        }
+
+        public Map<String, DirectorySettings> getDirectorySettings() {
+            return directorySettings;
+        }
+    }
+
+    /**
+     * How much a single scan may cost. A {@code null} option takes its default.
+     */
+    public static class ScanResources {
+
+        private final Integer ioBudget;
+
+        private final Duration scanTimeout;
+
+        private final Boolean sharedScans;
+
+        /**
+         * @param ioBudget the file system operations allowed per second, {@code null} for no limit
+         * @param scanTimeout the time after which a snapshot is abandoned, {@code null} for no limit
+         * @param sharedScans whether snapshots are shared with the other watchers of the JVM, {@code null} for {@code false}
+         */
+        public ScanResources(Integer ioBudget, Duration scanTimeout, Boolean sharedScans) {
+            this.ioBudget = ioBudget;
+            this.scanTimeout = scanTimeout;
+            this.sharedScans = sharedScans;
+        }
+
+        public Integer getIoBudget() {
+            return ioBudget;
+        }
+
+        public Duration getScanTimeout() {
+            return scanTimeout;
+        }
+
+        public Boolean getSharedScans() {
+            return sharedScans;
+        }
+    }
+
+    /**
+     * The scan settings of a single directory, overriding those of the watcher. The directory is then
+     * scanned on its own cadence; when scans fall behind, those of higher priority run first. A very large
+     * directory may also be split into slices, a single one being scanned per cycle. The phase offset and
+     * jitter, when set, replace those of the watcher.
+     */
+    public static class DirectorySettings {
+
+        private static final int DEFAULT_PRIORITY = 0;
+
+        private static final int DEFAULT_SLICES = 1;
+
+        private final Duration pollInterval;
+
+        private final Duration quietPeriod;
+
+        private final Integer priority;
+
+        private final Integer slices;
+
+        private final Duration phaseOffset;
+
+        private final Duration jitter;
+
+        private final Set<String> triggerPatterns;
+
+        /**
+         * @param pollInterval the poll interval, {@code null} for the watcher's one
+         * @param quietPeriod the quiet period, {@code null} for the watcher's one
+         * @param priority the priority, higher first, {@code null} for {@code 0}
+         */
+        public DirectorySettings(Duration pollInterval, Duration quietPeriod, Integer priority) {
+            this(pollInterval, quietPeriod, priority, null);
+        }
+
+        /**
+         * @param pollInterval the poll interval, {@code null} for the watcher's one
+         * @param quietPeriod the quiet period, {@code null} for the watcher's one
+         * @param priority the priority, higher first, {@code null} for {@code 0}
+         * @param slices the number of slices scanned in turn, one per cycle, {@code null} for {@code 1}
+         */
+        public DirectorySettings(Duration pollInterval, Duration quietPeriod, Integer priority, Integer slices) {
+            this(pollInterval, quietPeriod, priority, slices, null, null);
+        }
+
+        /**
+         * @param pollInterval the poll interval, {@code null} for the watcher's one
+         * @param quietPeriod the quiet period, {@code null} for the watcher's one
+         * @param priority the priority, higher first, {@code null} for {@code 0}
+         * @param slices the number of slices scanned in turn, one per cycle, {@code null} for {@code 1}
+         * @param phaseOffset the delay of the first scan, {@code null} for the watcher's one
+         * @param jitter the width of the random variation of the poll interval, {@code null} for the watcher's one
+         */
+        public DirectorySettings(Duration pollInterval, Duration quietPeriod, Integer priority, Integer slices,
+                                 Duration phaseOffset, Duration jitter) {
+            this(pollInterval, quietPeriod, priority, slices, phaseOffset, jitter, null);
+        }
+
+        /**
+         * @param pollInterval the poll interval, {@code null} for the watcher's one
+         * @param quietPeriod the quiet period, {@code null} for the watcher's one
+         * @param priority the priority, higher first, {@code null} for {@code 0}
+         * @param slices the number of slices scanned in turn, one per cycle, {@code null} for {@code 1}
+         * @param phaseOffset the delay of the first scan, {@code null} for the watcher's one
+         * @param jitter the width of the random variation of the poll interval, {@code null} for the watcher's one
+         * @param triggerPatterns the glob patterns of the trigger files (e.g. {@code _SUCCESS}, {@code *.ready})
+         *                        gating the scans, {@code null} or empty to always scan
+         */
+        public DirectorySettings(Duration pollInterval, Duration quietPeriod, Integer priority, Integer slices,
+                                 Duration phaseOffset, Duration jitter, Set<String> triggerPatterns) {
+            Assert.isTrue(slices == null || slices > 0, "DirectorySettings' slices must be positive");
+            Assert.isTrue(phaseOffset == null || !phaseOffset.isNegative(), "DirectorySettings' phaseOffset must not be negative");
+            Assert.isTrue(jitter == null || !jitter.isNegative(), "DirectorySettings' jitter must not be negative");
+            this.pollInterval = pollInterval;
+            this.quietPeriod = quietPeriod;
+            this.priority = priority;
+            this.slices = slices;
+            this.phaseOffset = phaseOffset;
+            this.jitter = jitter;
+            if (triggerPatterns == null || triggerPatterns.isEmpty()) {
+                this.triggerPatterns = Set.of();
+            } else {
+                Assert.isTrue(slices == null || slices == 1, "DirectorySettings' triggerPatterns and slices are mutually exclusive");
+                this.triggerPatterns = triggerPatterns.stream()
+                        .peek(pattern -> Assert.hasText(pattern, "DirectorySettings' triggerPatterns must not contain empty patterns"))
+                        .map(String::trim)
+                        .collect(Collectors.toUnmodifiableSet());
+            }
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public Duration getQuietPeriod() {
+            return quietPeriod;
+        }
+
+        public int getPriority() {
+            return (priority != null) ? priority : DEFAULT_PRIORITY;
+        }
+
+        public int getSlices() {
+            return (slices != null) ? slices : DEFAULT_SLICES;
+        }
+
+        public Duration getPhaseOffset() {
+            return phaseOffset;
+        }
+
+        public Duration getJitter() {
+            return jitter;
+        }
+
+        public Set<String> getTriggerPatterns() {
+            return triggerPatterns;
+        }
+    }
 }
\ No newline at end of file
@@ -61,34 +61,61 @@ public class FileWatcherPropertiesFactory {
                 })
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-        Constructor<?> mostParameterizedConstructor = getMostParameterizedConstructor();
+        Constructor<?> mostParameterizedConstructor = getMostParameterizedConstructor(FileWatcherProperties.class);
         Assert.notNull(mostParameterizedConstructor, "No suitable constructor found for FileWatcherProperties");
 
+        FileWatcherProperties fileWatcherProperties = null;
+        try {
+            Object[] constructorArguments = resolveArguments(mostParameterizedConstructor, normalizedProperties, propertyFunction);
+            mostParameterizedConstructor.setAccessible(true);
+            fileWatcherProperties = (FileWatcherProperties) mostParameterizedConstructor.newInstance(constructorArguments);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            logger.error("Failed to create FileWatcherProperties instance", e);
+        }
+        return fileWatcherProperties;
+    }
+
+    /**
+     * Resolves the arguments of the given constructor by parameter name. An option group of
+     * {@link FileWatcherProperties} (e.g. {@link FileWatcherProperties.DispatchSettings}) that is not
+     * given as such is created from the properties named after its own constructor parameters, so that
+     * {@code asyncListeners} may be given without its group; it is left {@code null} when none is given.
+     */
+    private static Object[] resolveArguments(Constructor<?> constructor,
+                                             Map<String, Object> normalizedProperties,
+                                             PropertyFunction propertyFunction)
+            throws InstantiationException, IllegalAccessException, InvocationTargetException {
         List<Object> constructorArguments = new ArrayList<>();
-        for (Parameter parameter : mostParameterizedConstructor.getParameters()) {
+        for (Parameter parameter : constructor.getParameters()) {
             String parameterName = normalizePropertyName(parameter.getName());
             Object rawValue = normalizedProperties.get(parameterName);
-            if (rawValue == null) {
+            if (rawValue == null && parameter.getType().getDeclaringClass() == FileWatcherProperties.class) {
+                constructorArguments.add(createOptionGroup(parameter.getType(), normalizedProperties, propertyFunction));
+            } else if (rawValue == null) {
                 constructorArguments.add(null);
             } else {
                 Object convertedValue = propertyFunction == null ? rawValue : propertyFunction.apply(rawValue.getClass(), parameter.getType(), rawValue);
                 constructorArguments.add(convertedValue);
             }
         }
+        return constructorArguments.toArray();
+    }
 
-        FileWatcherProperties fileWatcherProperties = null;
-        try {
-            mostParameterizedConstructor.setAccessible(true);
-            fileWatcherProperties = (FileWatcherProperties) mostParameterizedConstructor.newInstance(constructorArguments.toArray());
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            logger.error("Failed to create FileWatcherProperties instance", e);
+    private static Object createOptionGroup(Class<?> groupType,
+                                            Map<String, Object> normalizedProperties,
+                                            PropertyFunction propertyFunction)
+            throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        Constructor<?> constructor = getMostParameterizedConstructor(groupType);
+        if (constructor == null || Arrays.stream(constructor.getParameters())
+                .noneMatch(parameter -> normalizedProperties.get(normalizePropertyName(parameter.getName())) != null)) {
+            return null;
         }
-        return fileWatcherProperties;
+        return constructor.newInstance(resolveArguments(constructor, normalizedProperties, propertyFunction));
     }
 
     @SuppressWarnings("unchecked")
-    private static <T> Constructor<T> getMostParameterizedConstructor() {
-        Constructor<T>[] constructors = (Constructor<T>[]) FileWatcherProperties.class.getDeclaredConstructors();
+    private static <T> Constructor<T> getMostParameterizedConstructor(Class<T> type) {
+        Constructor<T>[] constructors = (Constructor<T>[]) type.getDeclaredConstructors();
         if (constructors.length == 0) {
             return null;
         }
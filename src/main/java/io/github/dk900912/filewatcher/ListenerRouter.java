@@ -0,0 +1,208 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.filter.AnyFilter;
+import io.github.dk900912.filewatcher.filter.PrefixFilter;
+import io.github.dk900912.filewatcher.filter.SuffixFilter;
+import io.github.dk900912.filewatcher.listener.FileChangeListener;
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes change sets to the listeners whose own filter accepts them, compiling all filters into a
+ * single index so that each changed path is looked up once rather than once per listener:
+ *
+ * <pre>
+ * ┌─────────────── Routing Index ───────────────┐
+ * │ No filter / AnyFilter : always delivered    │
+ * │ SuffixFilter          : suffix ─▶ listeners │  one hash lookup
+ * │ PrefixFilter          : dir    ─▶ listeners │  one lookup per ancestor
+ * │ Other filters         : evaluated in turn   │  regex, glob, custom
+ * └─────────────────────────────────────────────┘
+ * </pre>
+ *
+ * Every listener receives only the changes it accepts, grouped by directory as usual, and is not
+ * called at all if there are none. A move is delivered as such only to the listeners accepting both
+ * of its paths, the others seeing the addition or the deletion they accept. Likewise, a directory change
+ * is delivered to the listeners accepting any of its files, with only those as members. A failing listener is logged and does not affect the others.
+ *
+ * @author dukui
+ */
+final class ListenerRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListenerRouter.class);
+
+    private final List<FileChangeListener> listeners = new ArrayList<>();
+
+    private final BitSet unconditional = new BitSet();
+
+    private final Map<String, BitSet> bySuffix = new HashMap<>();
+
+    private final Map<File, BitSet> byPrefix = new HashMap<>();
+
+    private final Map<Integer, FileFilter> others = new LinkedHashMap<>();
+
+    ListenerRouter(List<Route> routes) {
+        for (Route route : routes) {
+            int index = this.listeners.size();
+            this.listeners.add(route.listener());
+            FileFilter filter = route.filter();
+            if (filter == null || filter instanceof AnyFilter) {
+                this.unconditional.set(index);
+            } else if (filter instanceof SuffixFilter suffixFilter) {
+                suffixFilter.getSuffixes().forEach(suffix -> this.bySuffix.computeIfAbsent(suffix, (key) -> new BitSet()).set(index));
+            } else if (filter instanceof PrefixFilter prefixFilter) {
+                prefixFilter.getPrefixes().forEach(prefix -> this.byPrefix.computeIfAbsent(prefix, (key) -> new BitSet()).set(index));
+            } else {
+                this.others.put(index, filter);
+            }
+        }
+    }
+
+    List<FileChangeListener> getListeners() {
+        return Collections.unmodifiableList(this.listeners);
+    }
+
+    void dispatch(Set<ChangedFiles> changeSet) {
+        if (this.unconditional.cardinality() == this.listeners.size()) {
+            // Nothing to route
+            for (FileChangeListener listener : this.listeners) {
+                fire(listener, changeSet);
+            }
+            return;
+        }
+        List<Map<File, Set<ChangedFile>>> routed = new ArrayList<>(Collections.nCopies(this.listeners.size(), null));
+        BitSet matched = new BitSet(this.listeners.size());
+        BitSet matchedPrevious = new BitSet(this.listeners.size());
+        for (ChangedFiles changedFiles : changeSet) {
+            File directory = changedFiles.getDirectory();
+            for (ChangedFile changedFile : changedFiles) {
+                if (changedFile.getType().isDirectoryChange()) {
+                    routeDirectory(directory, changedFile, matched, routed);
+                    continue;
+                }
+                match(changedFile.getFile(), matched);
+                if (changedFile.getType() == ChangedFile.Type.MOVE) {
+                    match(changedFile.getPreviousFile(), matchedPrevious);
+                    routeMove(directory, changedFile, matched, matchedPrevious, routed);
+                } else {
+                    for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                        route(routed, i, directory, changedFile);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < this.listeners.size(); i++) {
+            if (this.unconditional.get(i)) {
+                fire(this.listeners.get(i), changeSet);
+            } else if (routed.get(i) != null) {
+                Set<ChangedFiles> subset = new LinkedHashSet<>();
+                routed.get(i).forEach((directory, files) -> subset.add(new ChangedFiles(directory, files)));
+                fire(this.listeners.get(i), Collections.unmodifiableSet(subset));
+            }
+        }
+    }
+
+    /**
+     * Route a move as such to the listeners accepting both paths, and as the addition of its new path
+     * or the deletion of its old one to the listeners accepting only either.
+     */
+    private static void routeMove(File directory, ChangedFile move, BitSet matched, BitSet matchedPrevious,
+                                  List<Map<File, Set<ChangedFile>>> routed) {
+        BitSet any = (BitSet) matched.clone();
+        any.or(matchedPrevious);
+        for (int i = any.nextSetBit(0); i >= 0; i = any.nextSetBit(i + 1)) {
+            if (matched.get(i) && matchedPrevious.get(i)) {
+                route(routed, i, directory, move);
+            } else if (matched.get(i)) {
+                route(routed, i, directory, new ChangedFile(directory, move.getFile(), ChangedFile.Type.ADD,
+                        null, move.getCurrentSnapshot()));
+            } else {
+                route(routed, i, directory, new ChangedFile(directory, move.getPreviousFile(), ChangedFile.Type.DELETE,
+                        move.getPreviousSnapshot(), null));
+            }
+        }
+    }
+
+    /**
+     * Route a directory change to the listeners accepting at least one of its files, restricted to those.
+     */
+    private void routeDirectory(File directory, ChangedFile directoryChange, BitSet matched,
+                                List<Map<File, Set<ChangedFile>>> routed) {
+        Map<Integer, List<FileSnapshot>> members = new LinkedHashMap<>();
+        for (ChangedFile member : directoryChange.getMembers()) {
+            match(member.getFile(), matched);
+            FileSnapshot snapshot = (member.getCurrentSnapshot() != null) ? member.getCurrentSnapshot() : member.getPreviousSnapshot();
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                members.computeIfAbsent(i, (key) -> new ArrayList<>()).add(snapshot);
+            }
+        }
+        members.forEach((index, accepted) -> route(routed, index, directory,
+                (accepted.size() == directoryChange.getMemberCount())
+                        ? directoryChange
+                        : new ChangedFile(directory, directoryChange.getFile(), directoryChange.getType(), accepted)));
+    }
+
+    private static void route(List<Map<File, Set<ChangedFile>>> routed, int index, File directory, ChangedFile changedFile) {
+        if (routed.get(index) == null) {
+            routed.set(index, new LinkedHashMap<>());
+        }
+        routed.get(index).computeIfAbsent(directory, (key) -> new LinkedHashSet<>()).add(changedFile);
+    }
+
+    /**
+     * Collect into {@code matched} the conditional listeners accepting the given file.
+     */
+    private void match(File file, BitSet matched) {
+        matched.clear();
+        if (!this.bySuffix.isEmpty()) {
+            String suffix = SuffixFilter.getSuffix(file);
+            BitSet listeners = (suffix != null) ? this.bySuffix.get(suffix) : null;
+            if (listeners != null) {
+                matched.or(listeners);
+            }
+        }
+        if (!this.byPrefix.isEmpty()) {
+            for (File current = PrefixFilter.normalize(file); current != null; current = current.getParentFile()) {
+                BitSet listeners = this.byPrefix.get(current);
+                if (listeners != null) {
+                    matched.or(listeners);
+                }
+            }
+        }
+        for (Map.Entry<Integer, FileFilter> entry : this.others.entrySet()) {
+            if (!matched.get(entry.getKey()) && entry.getValue().accept(file)) {
+                matched.set(entry.getKey());
+            }
+        }
+    }
+
+    private static void fire(FileChangeListener listener, Set<ChangedFiles> changeSet) {
+        try {
+            listener.onChange(changeSet);
+        } catch (RuntimeException e) {
+            // A failing listener must neither stop the scans nor starve the other listeners
+            logger.error("Listener '{}' failed to handle file changes", listener, e);
+        }
+    }
+
+    /**
+     * A listener and the filter selecting the changes it receives, {@code null} for all of them.
+     */
+    record Route(FileChangeListener listener, FileFilter filter) {
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.dk900912.filewatcher;
 
+import io.github.dk900912.filewatcher.codec.SnapshotCodec;
 import io.github.dk900912.filewatcher.model.DirectorySnapshot;
 import io.github.dk900912.filewatcher.model.FileSnapshot;
 import io.github.dk900912.filewatcher.utils.Assert;
@@ -10,20 +11,17 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.StreamCorruptedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * Persistent repository for storing/restoring directory snapshots to maintain file monitoring
@@ -35,6 +33,13 @@ import static java.nio.file.StandardOpenOption.WRITE;
  * <p>2. <b>Crash Resilience</b> - Preserves pre-crash state to detect changes occurred during
  * service downtime through snapshot comparison during recovery.
  *
+ * <p>3. <b>Partial Recovery</b> - Each directory is stored in its own checksummed section, so a
+ * corrupted section only costs a rescan of that directory, see {@link SnapshotFile}.
+ *
+ * <p>4. <b>Optional Compression</b> - Sections can be encoded by a {@link SnapshotCodec}, trading CPU
+ * for I/O on slow disks. The codec is recorded in the file, so snapshots written with any available
+ * codec are restored regardless of the one currently configured.
+ *
  * @author dukui
  * @see FileSystemWatcher
  */
@@ -42,37 +47,34 @@ public final class LocalSnapshotStateRepository implements SnapshotStateReposito
 
     private static final Logger logger = LoggerFactory.getLogger(LocalSnapshotStateRepository.class);
 
-    private static final String SERIALIZATION_VERSION = "1.0";
+    // Legacy ObjectOutputStream based formats, still accepted on restore (1.0 lacks the directory times)
+    private static final String LEGACY_SERIALIZATION_VERSION = "1.1";
+
+    private static final String LEGACY_SERIALIZATION_VERSION_WITHOUT_DIRECTORY_TIMES = "1.0";
 
     private final Path storage;
 
+    private final SnapshotCodec codec;
+
     public LocalSnapshotStateRepository(Path storage) {
+        this(storage, SnapshotCodec.NONE);
+    }
+
+    /**
+     * @param storage the snapshot file
+     * @param codec the codec encoding the sections of saved snapshots
+     */
+    public LocalSnapshotStateRepository(Path storage, SnapshotCodec codec) {
         Assert.notNull(storage, "Storage path must not be null");
+        Assert.notNull(codec, "SnapshotCodec must not be null");
         this.storage = storage;
+        this.codec = codec;
     }
 
-    /*
-     * ┌──────── SAVE (Write Sequence) ────────┐
-     * │  ╭───────── Root Structure ────────╮  │
-     * │  │ 1. writeUTF(Version)            │  │
-     * │  │ 2. writeInt(Directory Count)    │  │
-     * │  ╰────────────────┬────────────────╯  │
-     * │                   │                   │
-     * │                   ▼                   │
-     * │  ╭───────── Per Directory ─────────╮  │
-     * │  │ 3. writeUTF(Directory Path)     │  │
-     * │  │ 4. writeObject(Snapshot Time)   │  │
-     * │  │ 5. writeInt(File Count)         │  │
-     * │  ╰────────────────┬────────────────╯  │
-     * │                   │                   │
-     * │                   ▼                   │
-     * │  ╭───────── Per File ──────────────╮  │
-     * │  │ 6. writeUTF(File Path)          │  │
-     * │  │ 7. writeBoolean(Existence)      │  │
-     * │  │ 8. writeLong(File Size)         │  │
-     * │  │ 9. writeLong(Last Modified)     │  │
-     * │  ╰─────────────────────────────────╯  │
-     * └───────────────────────────────────────┘
+    /**
+     * Write one section per directory followed by the footer indexing them, see {@link SnapshotFile}.
+     * The file is written next to the storage and moved into place once complete, so that a crash
+     * while saving never leaves a truncated snapshot behind.
      */
     @Override
     @SuppressWarnings("unchecked")
@@ -82,24 +84,69 @@ public final class LocalSnapshotStateRepository implements SnapshotStateReposito
             return;
         }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(storage, CREATE, WRITE, TRUNCATE_EXISTING))) {
+        try {
+            SnapshotFile.write(storage, (Map<File, DirectorySnapshot>) state, codec);
+        } catch (IOException e) {
+            logger.error("Failed to save snapshot state", e);
+        }
+    }
 
-            oos.writeUTF(SERIALIZATION_VERSION);
+    /**
+     * Read the footer, then decode the sections in parallel. A section that fails its checksum is
+     * dropped on its own (its directory will be snapshotted from scratch) while the others are kept;
+     * the whole file is only deleted when the footer itself is unreadable.
+     */
+    @Override
+    public synchronized Object restore() {
+        if (!Files.exists(storage)) {
+            logger.info("No snapshot file was found. A new snapshot will be created automatically upon the first save");
+            return null;
+        }
 
-            Map<File, DirectorySnapshot> snapshots = (Map<File, DirectorySnapshot>) state;
+        if (storage.toFile().length() == 0) {
+            logger.info("The snapshot file is empty, which renders restoration unnecessary");
+            return null;
+        }
 
-            oos.writeInt(snapshots.size());
+        try {
+            if (SnapshotFile.isLegacy(storage)) {
+                return restoreLegacy();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to restore snapshot state", e);
+            return null;
+        }
 
-            for (Map.Entry<File, DirectorySnapshot> entry : snapshots.entrySet()) {
-                serializeDirectorySnapshot(oos, entry.getKey(), entry.getValue());
+        try (SnapshotFile snapshotFile = SnapshotFile.open(storage)) {
+            List<DirectorySnapshot> restored = snapshotFile.getSections()
+                    .parallelStream()
+                    .map(section -> {
+                        try {
+                            return snapshotFile.readSection(section);
+                        } catch (IOException e) {
+                            logger.error("Dropping the snapshot of '{}' from '{}'", section.directory(), storage, e);
+                            return null;
+                        }
+                    })
+                    .toList();
+            Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
+            for (DirectorySnapshot snapshot : restored) {
+                if (snapshot != null) {
+                    snapshots.put(snapshot.getDirectory(), snapshot);
+                }
             }
+            return snapshots;
+        } catch (SnapshotFile.CorruptedSnapshotException e) {
+            logger.error("Corrupted snapshot detected. Deleting...", e);
+            deleteStorage();
         } catch (IOException e) {
-            logger.error("Failed to save snapshot state", e);
+            logger.error("Failed to restore snapshot state", e);
         }
+        return null;
     }
 
     /*
-     * ┌─────── RESTORE (Read Sequence) ───────┐
+     * ┌──── RESTORE LEGACY (Read Sequence) ───┐
      * │  ╭───────── Root Structure ────────╮  │
      * │  │ 1. readUTF(Version Check)       │  │
      * │  │ 2. readInt(Directory Count)     │  │
@@ -118,24 +165,21 @@ public final class LocalSnapshotStateRepository implements SnapshotStateReposito
      * │  │ 7. readBoolean(Existence)       │  │
      * │  │ 8. readLong(File Size)          │  │
      * │  │ 9. readLong(Last Modified)      │  │
+     * │  ╰────────────────┬────────────────╯  │
+     * │                   │                   │
+     * │                   ▼                   │
+     * │  ╭───── Directory Times (1.1+) ────╮  │
+     * │  │ 10. readInt(Dir Count)          │  │
+     * │  │ 11. readUTF(Dir Path)           │  │
+     * │  │ 12. readLong(Last Modified)     │  │
      * │  ╰─────────────────────────────────╯  │
      * └───────────────────────────────────────┘
      */
-    @Override
-    public synchronized Object restore() {
-        if (!Files.exists(storage)) {
-            logger.info("No snapshot file was found. A new snapshot will be created automatically upon the first save");
-            return null;
-        }
-
-        if (storage.toFile().length() == 0) {
-            logger.info("The snapshot file is empty, which renders restoration unnecessary");
-            return null;
-        }
-
+    private Map<File, DirectorySnapshot> restoreLegacy() {
         try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(storage, READ))) {
             String serialVer = ois.readUTF();
-            if (!SERIALIZATION_VERSION.equals(serialVer)) {
+            boolean withDirectoryTimes = LEGACY_SERIALIZATION_VERSION.equals(serialVer);
+            if (!withDirectoryTimes && !LEGACY_SERIALIZATION_VERSION_WITHOUT_DIRECTORY_TIMES.equals(serialVer)) {
                 logger.error("Failed to restore snapshot state due to a serialization version mismatch");
                 return null;
             }
@@ -143,39 +187,28 @@ public final class LocalSnapshotStateRepository implements SnapshotStateReposito
             Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
             int size = ois.readInt();
             for (int i = 0; i < size; i++) {
-                DirectorySnapshot ds = deserializeDirectorySnapshot(ois);
+                DirectorySnapshot ds = deserializeDirectorySnapshot(ois, withDirectoryTimes);
                 snapshots.put(ds.getDirectory(), ds);
             }
             return snapshots;
         } catch (EOFException | StreamCorruptedException e) {
             logger.error("Corrupted snapshot detected. Deleting...");
-            try {
-                Files.delete(storage);
-            } catch (IOException ex) {
-                logger.error("Failed to delete corrupted snapshot file", ex);
-            }
+            deleteStorage();
         } catch (IOException | ClassNotFoundException e) {
             logger.error("Failed to restore snapshot state", e);
         }
         return null;
     }
 
-    private void serializeDirectorySnapshot(ObjectOutputStream oos, File directory, DirectorySnapshot snapshot) throws IOException {
-        oos.writeUTF(directory.getAbsolutePath());
-
-        oos.writeObject(snapshot.getTime());
-
-        oos.writeInt(snapshot.getFiles().size());
-
-        for (FileSnapshot file : snapshot.getFiles()) {
-            oos.writeUTF(file.getFile().getAbsolutePath());
-            oos.writeBoolean(file.exists());
-            oos.writeLong(file.getLength());
-            oos.writeLong(file.getLastModified());
+    private void deleteStorage() {
+        try {
+            Files.delete(storage);
+        } catch (IOException ex) {
+            logger.error("Failed to delete corrupted snapshot file", ex);
         }
     }
 
-    private DirectorySnapshot deserializeDirectorySnapshot(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    private DirectorySnapshot deserializeDirectorySnapshot(ObjectInputStream ois, boolean withDirectoryTimes) throws IOException, ClassNotFoundException {
         String dirPath = ois.readUTF();
         LocalDateTime time = (LocalDateTime) ois.readObject();
 
@@ -189,6 +222,15 @@ public final class LocalSnapshotStateRepository implements SnapshotStateReposito
             long lastModified = ois.readLong();
             files.add(new FileSnapshot(new File(filePath), exists, length, lastModified));
         }
-        return new DirectorySnapshot(new File(dirPath), time, files);
+
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        if (withDirectoryTimes) {
+            int directoryCount = ois.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String path = ois.readUTF();
+                directoryTimes.put(new File(path), ois.readLong());
+            }
+        }
+        return new DirectorySnapshot(new File(dirPath), time, files, directoryTimes);
     }
 }
@@ -0,0 +1,145 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.model.ScanAbortedException;
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Walks each directory once for all the watchers sharing their scans (see
+ * {@link FileWatcherProperties#getSharedScans()}): a snapshot taken by one watcher is handed to the
+ * others watching the same directory, or a directory below it, as long as it is recent enough for them.
+ *
+ * <pre>
+ * watcher A ── /data ─────┐                  ┌──▶ /data     A's filter &amp; listeners
+ * watcher B ── /data/in ──┼──▶ one walk ─────┼──▶ /data/in  subtree, B's filter &amp; listeners
+ * watcher C ── /data ─────┘                  └──▶ /data     C's filter &amp; listeners
+ * </pre>
+ *
+ * Snapshots hold every file whatever the filters, which only apply when diffing, so sharing them does
+ * not change what each watcher reports. Every watcher still goes through its own cycles: the directories
+ * end up walked at the pace of the fastest one, the others picking up its snapshots, and a walk in
+ * progress is waited for rather than repeated. Directories are matched by path as configured, so a
+ * relative and an absolute path to the same directory are not shared.
+ *
+ * @author dukui
+ */
+final class SharedScanEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedScanEngine.class);
+
+    static final SharedScanEngine INSTANCE = new SharedScanEngine();
+
+    // Guarded by itself
+    private final Map<File, Entry> entries = new HashMap<>();
+
+    /**
+     * Keep the snapshots of the given directory for the other watchers, until unregistered as many times.
+     *
+     * @param directory the directory watched
+     */
+    void register(File directory) {
+        Assert.notNull(directory, "Directory must not be null");
+        synchronized (this.entries) {
+            this.entries.computeIfAbsent(directory, (key) -> new Entry()).references++;
+        }
+    }
+
+    void unregister(File directory) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(directory);
+            if (entry != null && --entry.references == 0) {
+                this.entries.remove(directory);
+            }
+        }
+    }
+
+    /**
+     * Return a snapshot of the given directory whose walk started at most {@code maxAge} ago: one taken
+     * for the directory or one of its ancestors, possibly still being walked, or else a new one taken by
+     * the given walk and kept for the others if the directory is registered.
+     *
+     * @param directory the directory
+     * @param maxAge the age above which a snapshot is walked again
+     * @param timeout the time allowed to wait for a walk in progress, {@code null} for no limit
+     * @param walk takes a new snapshot of the directory
+     * @return the snapshot
+     * @throws ScanAbortedException if interrupted or timed out while waiting for a walk in progress
+     */
+    DirectorySnapshot snapshot(File directory, Duration maxAge, Duration timeout, Supplier<DirectorySnapshot> walk) {
+        long now = System.nanoTime();
+        CompletableFuture<DirectorySnapshot> recent = null;
+        CompletableFuture<DirectorySnapshot> walking = null;
+        synchronized (this.entries) {
+            for (File current = directory; current != null && recent == null; current = current.getParentFile()) {
+                Entry entry = this.entries.get(current);
+                if (entry != null && entry.walk != null && now - entry.startedAt <= maxAge.toNanos()) {
+                    recent = entry.walk;
+                }
+            }
+            Entry entry = this.entries.get(directory);
+            if (recent == null && entry != null) {
+                walking = new CompletableFuture<>();
+                entry.walk = walking;
+                entry.startedAt = now;
+            }
+        }
+        if (recent != null) {
+            DirectorySnapshot snapshot = await(directory, recent, timeout);
+            if (snapshot != null) {
+                logger.debug("o=={======> Reusing {} for {}", snapshot, directory);
+                return snapshot.subtree(directory);
+            }
+        }
+        try {
+            DirectorySnapshot snapshot = walk.get();
+            if (walking != null) {
+                walking.complete(snapshot);
+            }
+            return snapshot;
+        } catch (RuntimeException ex) {
+            if (walking != null) {
+                walking.completeExceptionally(ex);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Wait for the given walk, returning {@code null} if it failed.
+     */
+    private static DirectorySnapshot await(File directory, CompletableFuture<DirectorySnapshot> walk, Duration timeout) {
+        try {
+            return (timeout != null) ? walk.get(timeout.toNanos(), TimeUnit.NANOSECONDS) : walk.get();
+        } catch (ExecutionException ex) {
+            // Abandoned by the other watcher, e.g. past its own timeout
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ScanAbortedException("Scan interrupted while waiting for the walk of '" + directory + "'");
+        } catch (TimeoutException ex) {
+            throw new ScanAbortedException("Scan timed out while waiting for the walk of '" + directory + "'");
+        }
+    }
+
+    private static final class Entry {
+
+        private int references;
+
+        // The last walk of the directory, possibly in progress, and when it started
+        private CompletableFuture<DirectorySnapshot> walk;
+
+        private long startedAt;
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+
+/**
+ * Offline diff of two snapshot files written by {@link LocalSnapshotStateRepository}, reporting the same
+ * ADD/MODIFY/DELETE changes as {@link io.github.dk900912.filewatcher.model.DirectorySnapshot#getChangedFiles}
+ * without a running {@link FileSystemWatcher} and without touching the watched directories.
+ *
+ * <p>Since the entries of every section are sorted by path, each pair of sections is merge-joined while
+ * both are being streamed, so memory stays bounded whatever the number of entries. Changes are therefore
+ * reported in path order rather than grouped by type. Directories present in only one of the files are
+ * reported as entirely added or deleted. Every section is verified against its checksum before any of
+ * its changes is reported.
+ *
+ * <p>Also usable from the command line:
+ * <pre>
+ * java -cp file-watcher.jar io.github.dk900912.filewatcher.SnapshotDiff &lt;previous&gt; &lt;current&gt;
+ * </pre>
+ * which prints one {@code TYPE path} line per change and exits with {@code 0} when both snapshots are
+ * identical, {@code 1} when they differ and {@code 2} on error, like {@code diff}.
+ *
+ * @author dukui
+ */
+public final class SnapshotDiff {
+
+    private SnapshotDiff() {}
+
+    /**
+     * Diff two snapshot files.
+     *
+     * @param previous the older snapshot file
+     * @param current the newer snapshot file
+     * @param fileFilter the file filter, {@code null} to accept every file
+     * @param consumer receives each change
+     * @throws IOException if either file cannot be read, is corrupted or uses the legacy format
+     */
+    public static void diff(Path previous, Path current, FileFilter fileFilter, Consumer<ChangedFile> consumer)
+            throws IOException {
+        Assert.notNull(previous, "Previous snapshot must not be null");
+        Assert.notNull(current, "Current snapshot must not be null");
+        Assert.notNull(consumer, "Consumer must not be null");
+        checkNotLegacy(previous);
+        checkNotLegacy(current);
+        try (SnapshotFile previousFile = SnapshotFile.open(previous);
+             SnapshotFile currentFile = SnapshotFile.open(current)) {
+            Map<File, SnapshotFile.Section> currentSections = new LinkedHashMap<>();
+            for (SnapshotFile.Section section : currentFile.getSections()) {
+                currentSections.put(section.directory(), section);
+            }
+            for (SnapshotFile.Section previousSection : previousFile.getSections()) {
+                SnapshotFile.Section currentSection = currentSections.remove(previousSection.directory());
+                diff(previousFile, previousSection, currentFile, currentSection, fileFilter, consumer);
+            }
+            for (SnapshotFile.Section currentSection : currentSections.values()) {
+                diff(previousFile, null, currentFile, currentSection, fileFilter, consumer);
+            }
+        }
+    }
+
+    private static void checkNotLegacy(Path path) throws IOException {
+        if (SnapshotFile.isLegacy(path)) {
+            throw new IOException("Snapshot file '" + path + "' uses the legacy 1.x format, whose entries are not "
+                    + "sorted; restore and save it once to convert it");
+        }
+    }
+
+    private static void diff(SnapshotFile previousFile, SnapshotFile.Section previousSection,
+                             SnapshotFile currentFile, SnapshotFile.Section currentSection,
+                             FileFilter fileFilter, Consumer<ChangedFile> consumer) throws IOException {
+        File directory = (previousSection != null) ? previousSection.directory() : currentSection.directory();
+        SnapshotFile.SectionReader previousReader = open(previousFile, previousSection);
+        SnapshotFile.SectionReader currentReader = open(currentFile, currentSection);
+        try {
+            SnapshotFile.Entry previousEntry = next(previousReader);
+            SnapshotFile.Entry currentEntry = next(currentReader);
+            while (previousEntry != null || currentEntry != null) {
+                // Same order as the one the entries were sorted in when written
+                int comparison = (previousEntry == null) ? 1 : (currentEntry == null) ? -1
+                        : previousEntry.path().compareTo(currentEntry.path());
+                if (comparison < 0) {
+                    report(directory, previousEntry, DELETE, fileFilter, consumer);
+                    previousEntry = next(previousReader);
+                } else if (comparison > 0) {
+                    report(directory, currentEntry, ADD, fileFilter, consumer);
+                    currentEntry = next(currentReader);
+                } else {
+                    if (!previousEntry.equals(currentEntry)) {
+                        report(directory, currentEntry, MODIFY, fileFilter, consumer);
+                    }
+                    previousEntry = next(previousReader);
+                    currentEntry = next(currentReader);
+                }
+            }
+        } finally {
+            close(previousReader);
+            close(currentReader);
+        }
+    }
+
+    private static SnapshotFile.SectionReader open(SnapshotFile snapshotFile, SnapshotFile.Section section) throws IOException {
+        if (section == null) {
+            return null;
+        }
+        snapshotFile.verifySection(section);
+        return snapshotFile.openSection(section);
+    }
+
+    private static SnapshotFile.Entry next(SnapshotFile.SectionReader reader) throws IOException {
+        return (reader != null) ? reader.nextEntry() : null;
+    }
+
+    private static void close(SnapshotFile.SectionReader reader) throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private static void report(File directory, SnapshotFile.Entry entry, ChangedFile.Type type,
+                               FileFilter fileFilter, Consumer<ChangedFile> consumer) {
+        File file = new File(entry.path());
+        if (fileFilter == null || fileFilter.accept(file)) {
+            consumer.accept(new ChangedFile(directory, file, type));
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: SnapshotDiff <previous snapshot> <current snapshot>");
+            System.exit(2);
+        }
+        Map<ChangedFile.Type, Long> counts = new EnumMap<>(ChangedFile.Type.class);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024));
+        try {
+            diff(Paths.get(args[0]), Paths.get(args[1]), null, changedFile -> {
+                out.println(changedFile.getType() + " " + changedFile.getFile());
+                counts.merge(changedFile.getType(), 1L, Long::sum);
+            });
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Failed to diff snapshots: " + e.getMessage());
+            System.exit(2);
+        }
+        out.flush();
+        System.err.println(counts.getOrDefault(ADD, 0L) + " added, " + counts.getOrDefault(MODIFY, 0L)
+                + " modified, " + counts.getOrDefault(DELETE, 0L) + " deleted");
+        System.exit(counts.isEmpty() ? 0 : 1);
+    }
+}
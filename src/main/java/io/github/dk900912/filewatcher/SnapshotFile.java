@@ -0,0 +1,549 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.codec.SnapshotCodec;
+import io.github.dk900912.filewatcher.codec.SnapshotCodecs;
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Reader and writer of the sectioned snapshot file format used by {@link LocalSnapshotStateRepository}.
+ * Every watched directory is stored in its own section, whose entries are sorted by path, and a footer
+ * at the end of the file indexes the sections. Sections can therefore be located without reading the
+ * file sequentially, decoded independently (and in parallel), streamed entry by entry, and verified
+ * one by one through their CRC-32.
+ *
+ * <p>The content of each section is passed through the {@link SnapshotCodec} named in the header, so
+ * that a compressed section can still be decoded on its own and streamed; the CRC-32 covers the stored
+ * (encoded) bytes, hence corruption is detected before anything is decoded.
+ *
+ * <pre>
+ * ┌────────────────────── Snapshot File ──────────────────────┐
+ * │  ╭──────────── Header ─────────────╮                      │
+ * │  │ int(Magic) UTF(Version)         │                      │
+ * │  │ UTF(Codec)                      │  since 2.1           │
+ * │  ╰────────────────┬────────────────╯                      │
+ * │                   ▼                                       │
+ * │  ╭──────── Section (per root) ─────╮  encoded by codec    │
+ * │  │ UTF(Directory Path)             │                      │
+ * │  │ long(Epoch Second) int(Nano)    │                      │
+ * │  │ int(File Count)                 │                      │
+ * │  │   UTF(Path) boolean(Existence)  │  sorted by path      │
+ * │  │   long(Size) long(Modified)     │                      │
+ * │  │ int(Dir Count)                  │                      │
+ * │  │   UTF(Path) long(Modified)      │                      │
+ * │  ╰────────────────┬────────────────╯                      │
+ * │                   ▼                                       │
+ * │  ╭──────────── Footer ─────────────╮                      │
+ * │  │ int(Section Count)              │                      │
+ * │  │   UTF(Directory Path)           │                      │
+ * │  │   long(Offset) long(Length)     │                      │
+ * │  │   long(CRC-32) int(File Count)  │                      │
+ * │  │ long(Footer Offset) int(Magic)  │                      │
+ * │  ╰─────────────────────────────────╯                      │
+ * └───────────────────────────────────────────────────────────┘
+ * </pre>
+ *
+ * @author dukui
+ */
+final class SnapshotFile implements Closeable {
+
+    static final int MAGIC = 0x46575353;
+
+    static final String VERSION = "2.1";
+
+    // Same layout without the codec in the header, i.e. uncompressed
+    static final String VERSION_WITHOUT_CODEC = "2.0";
+
+    // First bytes of a java.io.ObjectOutputStream, i.e. of the legacy 1.x format
+    static final short LEGACY_STREAM_MAGIC = (short) 0xACED;
+
+    private static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final SnapshotCodec codec;
+
+    private final List<Section> sections;
+
+    private SnapshotFile(Path path, FileChannel channel, SnapshotCodec codec, List<Section> sections) {
+        this.path = path;
+        this.channel = channel;
+        this.codec = codec;
+        this.sections = sections;
+    }
+
+    /**
+     * Whether the file starts like a legacy {@code ObjectOutputStream} based snapshot.
+     */
+    static boolean isLegacy(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES);
+            return channel.read(buffer, 0) == Short.BYTES && buffer.getShort(0) == LEGACY_STREAM_MAGIC;
+        }
+    }
+
+    /**
+     * Open a snapshot file and read its footer.
+     *
+     * @throws CorruptedSnapshotException if the header, footer or trailer cannot be read
+     * @throws IOException if the version or the codec is not supported
+     */
+    static SnapshotFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, READ);
+        try {
+            long size = channel.size();
+            if (size < Integer.BYTES + TRAILER_LENGTH) {
+                throw new CorruptedSnapshotException("Snapshot file '" + path + "' is truncated");
+            }
+            SnapshotCodec codec;
+            try (DataInputStream header = new DataInputStream(new RegionInputStream(channel, 0, size))) {
+                if (header.readInt() != MAGIC) {
+                    throw new CorruptedSnapshotException("Snapshot file '" + path + "' has an unknown header");
+                }
+                String version = header.readUTF();
+                if (VERSION.equals(version)) {
+                    codec = lookupCodec(header.readUTF());
+                } else if (VERSION_WITHOUT_CODEC.equals(version)) {
+                    codec = SnapshotCodec.NONE;
+                } else {
+                    throw new IOException("Unsupported snapshot version '" + version + "'");
+                }
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+            channel.read(trailer, size - TRAILER_LENGTH);
+            trailer.flip();
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || footerOffset <= 0 || footerOffset > size - TRAILER_LENGTH) {
+                throw new CorruptedSnapshotException("Snapshot file '" + path + "' has no valid footer");
+            }
+            List<Section> sections = new ArrayList<>();
+            try (DataInputStream footer = new DataInputStream(new BufferedInputStream(
+                    new RegionInputStream(channel, footerOffset, size - TRAILER_LENGTH - footerOffset)))) {
+                int count = footer.readInt();
+                for (int i = 0; i < count; i++) {
+                    Section section = new Section(new File(footer.readUTF()), footer.readLong(), footer.readLong(),
+                            footer.readLong(), footer.readInt());
+                    if (section.offset < 0 || section.offset + section.length > footerOffset) {
+                        throw new CorruptedSnapshotException("Snapshot file '" + path + "' has an invalid section index");
+                    }
+                    sections.add(section);
+                }
+            } catch (CorruptedSnapshotException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new CorruptedSnapshotException("Snapshot file '" + path + "' has no valid footer", e);
+            }
+            return new SnapshotFile(path, channel, codec, Collections.unmodifiableList(sections));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static SnapshotCodec lookupCodec(String name) throws IOException {
+        try {
+            return SnapshotCodecs.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported snapshot codec '" + name + "'", e);
+        }
+    }
+
+    /**
+     * Write the given snapshots to a temporary file next to {@code target} and atomically move it into place,
+     * encoding each section with the given codec.
+     */
+    static void write(Path target, Map<File, DirectorySnapshot> snapshots, SnapshotCodec codec) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            List<Section> sections = new ArrayList<>(snapshots.size());
+            FileChannel channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING);
+            try (CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), BUFFER_SIZE))) {
+                DataOutputStream out = new DataOutputStream(counting);
+                out.writeInt(MAGIC);
+                out.writeUTF(VERSION);
+                out.writeUTF(codec.getName());
+                for (Map.Entry<File, DirectorySnapshot> entry : snapshots.entrySet()) {
+                    long offset = counting.getCount();
+                    CRC32 crc = new CRC32();
+                    try (DataOutputStream section = new DataOutputStream(new BufferedOutputStream(
+                            codec.encode(new CheckedOutputStream(new NonClosingOutputStream(counting), crc)), BUFFER_SIZE))) {
+                        writeSection(section, entry.getKey(), entry.getValue());
+                    }
+                    sections.add(new Section(entry.getKey(), offset, counting.getCount() - offset, crc.getValue(),
+                            entry.getValue().getFiles().size()));
+                }
+                long footerOffset = counting.getCount();
+                out.writeInt(sections.size());
+                for (Section section : sections) {
+                    out.writeUTF(section.directory.getAbsolutePath());
+                    out.writeLong(section.offset);
+                    out.writeLong(section.length);
+                    out.writeLong(section.crc);
+                    out.writeInt(section.fileCount);
+                }
+                out.writeLong(footerOffset);
+                out.writeInt(MAGIC);
+                out.flush();
+                // The file must be durable before it replaces the previous one
+                channel.force(true);
+            }
+            Files.move(temporary, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeSection(DataOutputStream out, File directory, DirectorySnapshot snapshot) throws IOException {
+        out.writeUTF(directory.getAbsolutePath());
+        LocalDateTime time = (snapshot.getTime() != null) ? snapshot.getTime() : LocalDateTime.now();
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+        List<FileSnapshot> files = new ArrayList<>(snapshot.getFiles());
+        files.sort(Comparator.comparing(file -> file.getFile().getAbsolutePath()));
+        out.writeInt(files.size());
+        for (FileSnapshot file : files) {
+            out.writeUTF(file.getFile().getAbsolutePath());
+            out.writeBoolean(file.exists());
+            out.writeLong(file.getLength());
+            out.writeLong(file.getLastModified());
+        }
+        out.writeInt(snapshot.getDirectoryTimes().size());
+        for (Map.Entry<File, Long> entry : snapshot.getDirectoryTimes().entrySet()) {
+            out.writeUTF(entry.getKey().getAbsolutePath());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    List<Section> getSections() {
+        return this.sections;
+    }
+
+    /**
+     * Open a streaming reader over the given section; entries are verified against the section's
+     * CRC-32 once the reader has been consumed to the end.
+     */
+    SectionReader openSection(Section section) throws IOException {
+        return new SectionReader(section, new RegionInputStream(this.channel, section.offset, section.length), this.codec);
+    }
+
+    /**
+     * Verify the stored bytes of the given section against its CRC-32 without decoding them, for callers
+     * that act on entries while streaming and cannot afford to find out about corruption afterwards.
+     *
+     * @throws CorruptedSnapshotException if the section does not match its checksum
+     */
+    void verifySection(Section section) throws IOException {
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream in = new CheckedInputStream(
+                new RegionInputStream(this.channel, section.offset, section.length), crc)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // Checksum only
+            }
+        }
+        if (crc.getValue() != section.crc) {
+            throw new CorruptedSnapshotException("Section of '" + section.directory + "' is corrupted");
+        }
+    }
+
+    /**
+     * Decode a whole section, streaming its entries straight into the snapshot's own collections.
+     *
+     * @throws CorruptedSnapshotException if the section does not match its checksum
+     */
+    DirectorySnapshot readSection(Section section) throws IOException {
+        try (SectionReader reader = openSection(section)) {
+            Set<FileSnapshot> files = new LinkedHashSet<>(Math.max(16, (int) (section.fileCount / 0.75f) + 1));
+            FileSnapshot file;
+            while ((file = reader.nextFile()) != null) {
+                files.add(file);
+            }
+            Map<File, Long> directoryTimes = reader.readDirectoryTimes();
+            return new DirectorySnapshot(reader.getDirectory(), reader.getTime(), files, directoryTimes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return this.path.toString();
+    }
+
+    /**
+     * Location of the section of one watched directory, as recorded in the footer.
+     */
+    record Section(File directory, long offset, long length, long crc, int fileCount) {
+    }
+
+    /**
+     * A file entry of a section, as stored.
+     */
+    record Entry(String path, boolean exists, long length, long lastModified) {
+    }
+
+    /**
+     * Streaming reader over the entries of one section, in the order they are stored.
+     */
+    static final class SectionReader implements Closeable {
+
+        private final Section section;
+
+        private final CRC32 crc = new CRC32();
+
+        private final CheckedInputStream stored;
+
+        private final DataInputStream in;
+
+        private final File directory;
+
+        private final LocalDateTime time;
+
+        private int remainingFiles;
+
+        private SectionReader(Section section, InputStream source, SnapshotCodec codec) throws IOException {
+            this.section = section;
+            this.stored = new CheckedInputStream(source, this.crc);
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(codec.decode(this.stored), BUFFER_SIZE));
+                this.directory = new File(this.in.readUTF());
+                this.time = LocalDateTime.ofEpochSecond(this.in.readLong(), this.in.readInt(), ZoneOffset.UTC);
+                this.remainingFiles = this.in.readInt();
+            } catch (IOException | RuntimeException e) {
+                throw corrupted(e);
+            }
+            if (!this.directory.equals(section.directory) || this.remainingFiles != section.fileCount) {
+                throw corrupted(null);
+            }
+        }
+
+        File getDirectory() {
+            return this.directory;
+        }
+
+        LocalDateTime getTime() {
+            return this.time;
+        }
+
+        /**
+         * Read the next file entry.
+         *
+         * @return the next file snapshot, or {@code null} once all files have been read
+         */
+        FileSnapshot nextFile() throws IOException {
+            Entry entry = nextEntry();
+            if (entry == null) {
+                return null;
+            }
+            try {
+                return new FileSnapshot(new File(entry.path()), entry.exists(), entry.length(), entry.lastModified());
+            } catch (RuntimeException e) {
+                throw corrupted(e);
+            }
+        }
+
+        /**
+         * Read the next file entry as stored, without the checks {@link FileSnapshot} performs against
+         * the filesystem.
+         *
+         * @return the next entry, or {@code null} once all files have been read
+         */
+        Entry nextEntry() throws IOException {
+            if (this.remainingFiles == 0) {
+                return null;
+            }
+            try {
+                this.remainingFiles--;
+                return new Entry(this.in.readUTF(), this.in.readBoolean(), this.in.readLong(), this.in.readLong());
+            } catch (IOException | RuntimeException e) {
+                throw corrupted(e);
+            }
+        }
+
+        /**
+         * Read the directory times that follow the file entries and verify the section checksum.
+         */
+        Map<File, Long> readDirectoryTimes() throws IOException {
+            while (nextFile() != null) {
+                // Skip the files the caller did not consume
+            }
+            try {
+                int count = this.in.readInt();
+                Map<File, Long> directoryTimes = new LinkedHashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+                for (int i = 0; i < count; i++) {
+                    directoryTimes.put(new File(this.in.readUTF()), this.in.readLong());
+                }
+                if (this.in.read() != -1) {
+                    throw corrupted(null);
+                }
+                // A decoder may stop short of the end of the stored bytes (e.g. a deflate trailer)
+                while (this.stored.skip(BUFFER_SIZE) > 0 || this.stored.read() != -1) {
+                    // Checksum what is left
+                }
+                if (this.crc.getValue() != this.section.crc) {
+                    throw corrupted(null);
+                }
+                return directoryTimes;
+            } catch (CorruptedSnapshotException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                throw corrupted(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+        private CorruptedSnapshotException corrupted(Exception cause) {
+            return new CorruptedSnapshotException("Section of '" + this.section.directory + "' is corrupted", cause);
+        }
+    }
+
+    /**
+     * Signals that (part of) a snapshot file cannot be trusted.
+     */
+    static final class CorruptedSnapshotException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CorruptedSnapshotException(String message) {
+            super(message);
+        }
+
+        CorruptedSnapshotException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Positional, non-closing view of a region of a {@link FileChannel}, so that several regions
+     * of the same file can be read concurrently.
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private long remaining;
+
+        private RegionInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) == 1) ? (single[0] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int read = this.channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, this.remaining)), this.position);
+            if (read > 0) {
+                this.position += read;
+                this.remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Lets a codec close its stream to finish a section without closing the file itself.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Keeps track of the logical offset at which the next byte will be written.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.dk900912.filewatcher.codec;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link SnapshotCodec} based on the JDK {@link Deflater}/{@link Inflater}.
+ *
+ * @author dukui
+ */
+public class DeflateSnapshotCodec implements SnapshotCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int level;
+
+    public DeflateSnapshotCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateSnapshotCodec(int level) {
+        Assert.isTrue(level == Deflater.DEFAULT_COMPRESSION
+                        || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+                () -> "Compression level must be between -1 and 9, but was " + level);
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return SnapshotCodecs.DEFLATE;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+        Deflater deflater = new Deflater(this.level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not released by DeflaterOutputStream since the deflater is not its own
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "(level=" + this.level + ")";
+    }
+}
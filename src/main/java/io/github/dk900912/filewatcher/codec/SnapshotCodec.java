@@ -0,0 +1,74 @@
+package io.github.dk900912.filewatcher.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec applied to each section of a persisted snapshot, e.g. to trade CPU for I/O when snapshots
+ * of large trees live on slow disks.
+ *
+ * <p>Codecs are stream based so that sections can still be written and restored entry by entry.
+ * Additional codecs can be plugged in through {@link java.util.ServiceLoader}, by listing the
+ * implementation (which needs a public no-arg constructor) in
+ * {@code META-INF/services/io.github.dk900912.filewatcher.codec.SnapshotCodec}; the codec recorded in
+ * a snapshot file is looked up by {@link #getName() name} on restore, see {@link SnapshotCodecs}.
+ *
+ * @author dukui
+ */
+public interface SnapshotCodec {
+
+    /**
+     * A codec storing sections as they are.
+     */
+    SnapshotCodec NONE = new SnapshotCodec() {
+
+        @Override
+        public String getName() {
+            return SnapshotCodecs.NONE;
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+
+    };
+
+    /**
+     * Return the unique name recorded in snapshot files written with this codec.
+     *
+     * @return the codec name
+     */
+    String getName();
+
+    /**
+     * Wrap the given stream so that everything written to the result is encoded. Closing the returned
+     * stream must finish the encoding and close {@code out}.
+     *
+     * @param out the stream receiving the encoded bytes
+     * @return the encoding stream
+     * @throws IOException if the stream cannot be created
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Wrap the given stream so that reading from the result decodes its content.
+     *
+     * @param in the stream providing the encoded bytes
+     * @return the decoding stream
+     * @throws IOException if the stream cannot be created
+     */
+    InputStream decode(InputStream in) throws IOException;
+
+}
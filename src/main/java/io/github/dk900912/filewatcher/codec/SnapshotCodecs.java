@@ -0,0 +1,52 @@
+package io.github.dk900912.filewatcher.codec;
+
+import java.util.ServiceLoader;
+
+/**
+ * Lookup of {@link SnapshotCodec}s by name: the built-in {@value #NONE} and {@value #DEFLATE} codecs,
+ * then those registered through {@link ServiceLoader}.
+ *
+ * @author dukui
+ */
+public final class SnapshotCodecs {
+
+    public static final String NONE = "none";
+
+    public static final String DEFLATE = "deflate";
+
+    private SnapshotCodecs() {}
+
+    /**
+     * Return the codec with the given name, configured with its defaults.
+     *
+     * @param name the codec name
+     * @return the codec
+     * @throws IllegalArgumentException if no such codec is available
+     */
+    public static SnapshotCodec forName(String name) {
+        return create(name, null);
+    }
+
+    /**
+     * Return the codec with the given name; the level only applies to the {@value #DEFLATE} codec.
+     *
+     * @param name the codec name, {@code null} for {@value #NONE}
+     * @param level the compression level or {@code null} for the codec's default
+     * @return the codec
+     * @throws IllegalArgumentException if no such codec is available
+     */
+    public static SnapshotCodec create(String name, Integer level) {
+        if (name == null || NONE.equalsIgnoreCase(name)) {
+            return SnapshotCodec.NONE;
+        }
+        if (DEFLATE.equalsIgnoreCase(name)) {
+            return (level != null) ? new DeflateSnapshotCodec(level) : new DeflateSnapshotCodec();
+        }
+        for (SnapshotCodec codec : ServiceLoader.load(SnapshotCodec.class, SnapshotCodecs.class.getClassLoader())) {
+            if (name.equals(codec.getName())) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("No SnapshotCodec named '" + name + "' is available");
+    }
+}
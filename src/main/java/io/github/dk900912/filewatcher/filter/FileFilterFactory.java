@@ -1,6 +1,7 @@
 package io.github.dk900912.filewatcher.filter;
 
 import io.github.dk900912.filewatcher.FileWatcherProperties;
+import io.github.dk900912.filewatcher.utils.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,19 +25,26 @@ public class FileFilterFactory {
                         .orElse(Map.of(ANY, Set.of()));
         MatchingStrategy matchingStrategy = (MatchingStrategy) acceptedStrategy.keySet().toArray()[0];
         Set<String> acceptedStrategyPatterns = acceptedStrategy.get(matchingStrategy);
+        FileFilter fileFilter = create(matchingStrategy, acceptedStrategyPatterns);
+        logger.info("FileWatcherProperties.acceptedStrategy is {}, use {}", matchingStrategy, fileFilter.getClass().getSimpleName());
+        return fileFilter;
+    }
+
+    /**
+     * Create the filter implementing the given strategy.
+     *
+     * @param matchingStrategy the matching strategy
+     * @param patterns the patterns of the strategy, ignored for {@link MatchingStrategy#ANY}
+     * @return the filter
+     */
+    public static FileFilter create(MatchingStrategy matchingStrategy, Set<String> patterns) {
+        Assert.notNull(matchingStrategy, "MatchingStrategy must not be null");
         return switch (matchingStrategy) {
-            case ANY -> {
-                logger.info("FileWatcherProperties.acceptedStrategy is ANY, use AnyFilter");
-                yield new AnyFilter();
-            }
-            case SUFFIX -> {
-                logger.info("FileWatcherProperties.acceptedStrategy is SUFFIX, use SuffixFilter");
-                yield new SuffixFilter(acceptedStrategyPatterns);
-            }
-            case REGEX -> {
-                logger.info("FileWatcherProperties.acceptedStrategy is REGEX, use RegexFilter");
-                yield new RegexFilter(acceptedStrategyPatterns);
-            }
+            case ANY -> new AnyFilter();
+            case SUFFIX -> new SuffixFilter(patterns);
+            case REGEX -> new RegexFilter(patterns);
+            case PREFIX -> new PrefixFilter(patterns);
+            case GLOB -> new GlobFilter(patterns);
         };
     }
 }
@@ -0,0 +1,56 @@
+package io.github.dk900912.filewatcher.filter;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accepts the files matching one of the given glob patterns, see {@link java.nio.file.FileSystem#getPathMatcher}.
+ * Patterns without a {@code /} are matched against the file name (e.g. {@code *.{png,jpg}}), the others
+ * against the absolute path (e.g. {@code /data/**&#47;reports/*.csv}).
+ *
+ * @author dukui
+ */
+public class GlobFilter implements FileFilter {
+
+    private final List<PathMatcher> nameMatchers = new ArrayList<>();
+
+    private final List<PathMatcher> pathMatchers = new ArrayList<>();
+
+    public GlobFilter(Set<String> globs) {
+        Assert.isTrue(globs != null && !globs.isEmpty(), "Globs must not be empty");
+        for (String glob : globs) {
+            Assert.hasText(glob, "Glob must not be empty");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob.trim());
+            (glob.indexOf('/') == -1 ? this.nameMatchers : this.pathMatchers).add(matcher);
+        }
+    }
+
+    @Override
+    public boolean accept(File pathname) {
+        Path name = pathname.toPath().getFileName();
+        if (name != null) {
+            for (PathMatcher matcher : this.nameMatchers) {
+                if (matcher.matches(name)) {
+                    return true;
+                }
+            }
+        }
+        if (!this.pathMatchers.isEmpty()) {
+            Path path = pathname.toPath().toAbsolutePath().normalize();
+            for (PathMatcher matcher : this.pathMatchers) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
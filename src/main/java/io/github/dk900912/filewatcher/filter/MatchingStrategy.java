@@ -18,6 +18,16 @@ public enum MatchingStrategy {
     /**
      * Regular expression matching
      */
-    REGEX
+    REGEX,
+
+    /**
+     * Directory prefix matching, i.e. files in a subtree
+     */
+    PREFIX,
+
+    /**
+     * Glob matching
+     */
+    GLOB
 
 }
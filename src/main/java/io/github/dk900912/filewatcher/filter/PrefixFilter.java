@@ -0,0 +1,60 @@
+package io.github.dk900912.filewatcher.filter;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Accepts the files located in one of the given directories or below, e.g. {@code /data/images}
+ * accepts {@code /data/images/2024/a.png} but not {@code /data/images-old/a.png}. Relative prefixes
+ * are resolved against the working directory.
+ *
+ * @author dukui
+ */
+public class PrefixFilter implements FileFilter {
+
+    private final Set<File> prefixes;
+
+    public PrefixFilter(Set<String> prefixes) {
+        Assert.isTrue(prefixes != null && !prefixes.isEmpty(), "Prefixes must not be empty");
+        Set<File> normalized = new LinkedHashSet<>();
+        for (String prefix : prefixes) {
+            Assert.hasText(prefix, "Prefix must not be empty");
+            normalized.add(normalize(new File(prefix.trim())));
+        }
+        this.prefixes = Collections.unmodifiableSet(normalized);
+    }
+
+    @Override
+    public boolean accept(File pathname) {
+        for (File current = normalize(pathname); current != null; current = current.getParentFile()) {
+            if (this.prefixes.contains(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the absolute, normalized prefix directories.
+     *
+     * @return the prefixes
+     */
+    public Set<File> getPrefixes() {
+        return this.prefixes;
+    }
+
+    /**
+     * Return the absolute, normalized form of the given file, as compared against the prefixes.
+     *
+     * @param file the file
+     * @return the normalized file
+     */
+    public static File normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+}
@@ -4,30 +4,22 @@ import io.github.dk900912.filewatcher.utils.Assert;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author dukui
  */
 public class SuffixFilter implements FileFilter {
 
+    // Lower-cased, without any leading dot
     private final Set<String> suffixes;
 
     public SuffixFilter(Set<String> suffixes) {
         Assert.isTrue(suffixes != null && !suffixes.isEmpty(), "Suffixes must not be empty");
-        this.suffixes = new LinkedHashSet<>(suffixes);
-    }
-
-    @Override
-    public boolean accept(File pathname) {
-        String fileName = pathname.getName();
-        int lastDotIndex = fileName.lastIndexOf('.');
-        if (lastDotIndex == -1) {
-            return false;
-        }
-        String actualSuffix = fileName.substring(lastDotIndex + 1);
-        return suffixes.stream()
+        this.suffixes = suffixes.stream()
                 .map(String::toLowerCase)
                 .map(suffix -> {
                     if (suffix.lastIndexOf('.') == -1) {
@@ -35,6 +27,36 @@ public class SuffixFilter implements FileFilter {
                     }
                     return suffix.substring(suffix.lastIndexOf('.') + 1);
                 })
-                .anyMatch(suffix -> suffix.equalsIgnoreCase(actualSuffix));
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    @Override
+    public boolean accept(File pathname) {
+        String actualSuffix = getSuffix(pathname);
+        return actualSuffix != null && this.suffixes.contains(actualSuffix);
+    }
+
+    /**
+     * Return the normalized suffixes: lower-cased, without any leading dot.
+     *
+     * @return the suffixes
+     */
+    public Set<String> getSuffixes() {
+        return Collections.unmodifiableSet(this.suffixes);
+    }
+
+    /**
+     * Return the lower-cased suffix of the given file, as compared against the suffixes.
+     *
+     * @param file the file
+     * @return the suffix or {@code null} if the file name has no dot
+     */
+    public static String getSuffix(File file) {
+        String fileName = file.getName();
+        int lastDotIndex = fileName.lastIndexOf('.');
+        if (lastDotIndex == -1) {
+            return null;
+        }
+        return fileName.substring(lastDotIndex + 1).toLowerCase();
     }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package io.github.dk900912.filewatcher.filter;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Set;
+
+/**
+ * Rejects temporary files, i.e. those matching one of the given glob patterns (e.g. {@code *.tmp},
+ * {@code .*.swp} or {@code *~}, see {@link GlobFilter}), and defers to the given filter for the others.
+ *
+ * <p>Applied when diffing snapshots, it collapses the churn of atomic saves: a temporary file is never
+ * reported, so writing {@code foo.tmp} and renaming it to {@code foo} is reported as a single
+ * {@code ADD} or {@code MODIFY} of {@code foo}, whether or not both steps happen within one scan.
+ *
+ * @author dukui
+ */
+public class TempFileFilter implements FileFilter {
+
+    private final FileFilter delegate;
+
+    private final GlobFilter temporary;
+
+    /**
+     * @param delegate the filter applied to the other files, {@code null} to accept them all
+     * @param patterns the glob patterns of temporary files
+     */
+    public TempFileFilter(FileFilter delegate, Set<String> patterns) {
+        Assert.isTrue(patterns != null && !patterns.isEmpty(), "Patterns must not be empty");
+        this.delegate = delegate;
+        this.temporary = new GlobFilter(patterns);
+    }
+
+    @Override
+    public boolean accept(File pathname) {
+        return !isTemporary(pathname) && (this.delegate == null || this.delegate.accept(pathname));
+    }
+
+    /**
+     * Return whether the given file is a temporary one.
+     *
+     * @param pathname the file
+     * @return whether it matches one of the patterns
+     */
+    public boolean isTemporary(File pathname) {
+        return this.temporary.accept(pathname);
+    }
+
+    public FileFilter getDelegate() {
+        return this.delegate;
+    }
+}
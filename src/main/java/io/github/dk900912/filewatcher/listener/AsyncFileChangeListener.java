@@ -0,0 +1,214 @@
+package io.github.dk900912.filewatcher.listener;
+
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link FileChangeListener} decorator delivering change sets to its delegate on an executor of its own,
+ * so that a slow listener no longer holds up scanning (nor the other listeners). Change sets are
+ * delivered one at a time, in the order they were detected.
+ *
+ * <p>At most {@code capacity} change sets wait in the queue. Beyond that, further changes are coalesced
+ * by path, the latest state winning (see {@link CoalescedChanges}), and delivered as a single change set
+ * once the queue has been drained, so that memory stays bounded by the number of distinct paths rather
+ * than by the number of scans.
+ *
+ * <pre>
+ *   onChange() ──▶ ┌──── Queue (capacity) ────┐ ──▶ ┌─────── Executor ────────┐
+ *                  │ [set1] [set2] ... [setN] │     │ delegate.onChange(set)  │
+ *                  └──────────────────────────┘     └─────────────────────────┘
+ *       overflow ──▶ ┌── Coalesced by path ──┐ ──▶ delivered once the queue is empty
+ *                    └───────────────────────┘
+ * </pre>
+ *
+ * @author dukui
+ */
+public class AsyncFileChangeListener implements FileChangeListener, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileChangeListener.class);
+
+    private final Object monitor = new Object();
+
+    private final FileChangeListener delegate;
+
+    private final Executor executor;
+
+    // Only shut down on close if created here
+    private final boolean ownedExecutor;
+
+    private final int capacity;
+
+    private final Queue<Batch> queue = new ArrayDeque<>();
+
+    private final CoalescedChanges overflow = new CoalescedChanges();
+
+    // Detection time of the oldest coalesced change
+    private long overflowSince;
+
+    private boolean draining;
+
+    private boolean closed;
+
+    /**
+     * Deliver change sets on a virtual thread.
+     *
+     * @param delegate the listener to deliver change sets to
+     * @param capacity the number of change sets queued before coalescing kicks in
+     */
+    public AsyncFileChangeListener(FileChangeListener delegate, int capacity) {
+        this(delegate, Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-change-listener-", 0).factory()),
+                true, capacity);
+    }
+
+    /**
+     * Deliver change sets on the given executor, which is left running on {@link #close()}.
+     *
+     * @param delegate the listener to deliver change sets to
+     * @param executor the executor running the delegate
+     * @param capacity the number of change sets queued before coalescing kicks in
+     */
+    public AsyncFileChangeListener(FileChangeListener delegate, Executor executor, int capacity) {
+        this(delegate, executor, false, capacity);
+    }
+
+    private AsyncFileChangeListener(FileChangeListener delegate, Executor executor, boolean ownedExecutor, int capacity) {
+        Assert.notNull(delegate, "FileChangeListener must not be null");
+        Assert.notNull(executor, "Executor must not be null");
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+        this.delegate = delegate;
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onChange(Set<ChangedFiles> changeSet) {
+        synchronized (this.monitor) {
+            if (this.closed) {
+                logger.warn("Dropping {} changed directories, the listener '{}' is closed", changeSet.size(), this.delegate);
+                return;
+            }
+            // Once coalescing started, queuing again would deliver newer changes before older ones
+            if (this.overflow.isEmpty() && this.queue.size() < this.capacity) {
+                this.queue.add(new Batch(changeSet, System.nanoTime()));
+            } else {
+                if (this.overflow.isEmpty()) {
+                    this.overflowSince = System.nanoTime();
+                }
+                this.overflow.add(changeSet);
+            }
+            if (!this.draining) {
+                this.draining = true;
+                try {
+                    this.executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    this.draining = false;
+                    logger.error("Failed to dispatch changes to the listener '{}'", this.delegate, e);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Batch batch;
+            synchronized (this.monitor) {
+                batch = this.queue.poll();
+                if (batch == null && !this.overflow.isEmpty()) {
+                    batch = new Batch(this.overflow.drain(), this.overflowSince);
+                }
+                if (batch == null) {
+                    this.draining = false;
+                    return;
+                }
+            }
+            try {
+                this.delegate.onChange(batch.changeSet);
+            } catch (RuntimeException e) {
+                logger.error("Listener '{}' failed to handle file changes", this.delegate, e);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("o=={======> Delivered changes to '{}' {} ms after detection", this.delegate,
+                        Duration.ofNanos(System.nanoTime() - batch.detectedAt).toMillis());
+            }
+        }
+    }
+
+    /**
+     * Return the number of change sets waiting to be delivered, counting all coalesced changes as one.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        synchronized (this.monitor) {
+            return this.queue.size() + (this.overflow.isEmpty() ? 0 : 1);
+        }
+    }
+
+    /**
+     * Return the number of distinct files whose changes are currently coalesced.
+     *
+     * @return the coalesced file count
+     */
+    public int getCoalescedFileCount() {
+        synchronized (this.monitor) {
+            return this.overflow.size();
+        }
+    }
+
+    /**
+     * Return how long the oldest undelivered change has been waiting for, zero if there is none.
+     *
+     * @return the delivery lag
+     */
+    public Duration getLag() {
+        synchronized (this.monitor) {
+            Batch oldest = this.queue.peek();
+            if (oldest != null) {
+                return Duration.ofNanos(System.nanoTime() - oldest.detectedAt);
+            }
+            return this.overflow.isEmpty() ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - this.overflowSince);
+        }
+    }
+
+    public FileChangeListener getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Stop accepting changes. Those already accepted are still delivered, the executor created by this
+     * listener (if any) being shut down once they are.
+     */
+    @Override
+    public void close() {
+        synchronized (this.monitor) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        if (this.ownedExecutor) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Async(" + this.delegate + ")";
+    }
+
+    private record Batch(Set<ChangedFiles> changeSet, long detectedAt) {
+    }
+}
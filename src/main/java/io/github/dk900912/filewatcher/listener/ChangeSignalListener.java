@@ -0,0 +1,24 @@
+package io.github.dk900912.filewatcher.listener;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Callback interface when file changes are detected, for consumers that only need to know that
+ * something changed, e.g. to reload a configuration directory. Unlike a {@link FileChangeListener},
+ * it receives no {@link io.github.dk900912.filewatcher.model.ChangedFile}s, so that the watcher can
+ * skip building them when nobody else needs them.
+ *
+ * @author dukui
+ */
+@FunctionalInterface
+public interface ChangeSignalListener {
+
+    /**
+     * Called when files have been changed.
+     *
+     * @param changeCounts the number of changed files, keyed by watched directory having any
+     */
+    void onSignal(Map<File, Integer> changeCounts);
+
+}
@@ -0,0 +1,184 @@
+package io.github.dk900912.filewatcher.listener;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MOVE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.APPEND;
+
+/**
+ * Pending changes coalesced by path, the latest state winning: ADD then MODIFY is still an ADD,
+ * ADD then DELETE cancels out, DELETE then ADD is a MODIFY and MODIFY then DELETE is a DELETE.
+ * Consecutive APPENDs are a single APPEND spanning all of them, and an APPEND followed by anything
+ * else is no longer one. Paths keep the order in which they first changed. Not thread-safe.
+ *
+ * <p>A MOVE is kept as such as long as nothing else happens to either path: moving an added file is
+ * an ADD of its new path, moves are chained (a file moved back being a MODIFY), and any other
+ * change to a moved file falls back to a DELETE of its old path and an ADD of its new one.
+ * A coalesced change carries the snapshot before its first change and the one after its last.
+ * Directory changes are coalesced file by file, hence delivered as the changes of their members.
+ *
+ * @author dukui
+ */
+final class CoalescedChanges {
+
+    private final Map<File, Change> changes = new LinkedHashMap<>();
+
+    void add(Set<ChangedFiles> changeSet) {
+        for (ChangedFiles changedFiles : changeSet) {
+            for (ChangedFile changedFile : changedFiles) {
+                add(changedFiles.getDirectory(), changedFile);
+            }
+        }
+    }
+
+    void add(File directory, ChangedFile changedFile) {
+        if (changedFile.getType().isDirectoryChange()) {
+            // Merged file by file, its members being possibly changed again before delivery
+            for (ChangedFile member : changedFile.getMembers()) {
+                add(directory, member);
+            }
+            return;
+        }
+        if (changedFile.getType() == MOVE) {
+            addMove(directory, changedFile);
+            return;
+        }
+        File file = changedFile.getFile();
+        Change existing = this.changes.get(file);
+        if (existing != null && existing.type == MOVE) {
+            existing = unfold(file, existing);
+        }
+        ChangedFile.Type type = (existing != null) ? merge(existing.type, changedFile.getType()) : changedFile.getType();
+        if (type == null) {
+            this.changes.remove(file);
+        } else {
+            // The state before the first change and after the last one
+            FileSnapshot previousSnapshot = (existing != null) ? existing.previousSnapshot : changedFile.getPreviousSnapshot();
+            this.changes.put(file, new Change(directory, type, null, previousSnapshot, changedFile.getCurrentSnapshot()));
+        }
+    }
+
+    private void addMove(File directory, ChangedFile move) {
+        File file = move.getFile();
+        File previousFile = move.getPreviousFile();
+        Change source = this.changes.remove(previousFile);
+        Change target = this.changes.get(file);
+        if (target != null && target.type == MOVE) {
+            // Whatever was moved onto the target before is gone now
+            target = unfold(file, target);
+        }
+        if (source == null) {
+            this.changes.put(file, new Change(directory, MOVE, previousFile, move.getPreviousSnapshot(), move.getCurrentSnapshot()));
+        } else if (source.type == ADD) {
+            putAdded(directory, file, target, move.getCurrentSnapshot());
+        } else if (source.type == MOVE) {
+            this.changes.put(file, source.previousFile.equals(file)
+                    ? new Change(directory, MODIFY, null, source.previousSnapshot, move.getCurrentSnapshot())
+                    : new Change(directory, MOVE, source.previousFile, source.previousSnapshot, move.getCurrentSnapshot()));
+        } else {
+            // Modified before being moved, so the move alone would not tell the whole story
+            this.changes.put(previousFile, new Change(source.directory, DELETE, null, source.previousSnapshot, null));
+            putAdded(directory, file, target, move.getCurrentSnapshot());
+        }
+    }
+
+    private void putAdded(File directory, File file, Change existing, FileSnapshot currentSnapshot) {
+        ChangedFile.Type type = (existing != null) ? merge(existing.type, ADD) : ADD;
+        FileSnapshot previousSnapshot = (existing != null) ? existing.previousSnapshot : null;
+        this.changes.put(file, new Change(directory, type, null, previousSnapshot, currentSnapshot));
+    }
+
+    /**
+     * Replace the pending MOVE onto {@code file} with a DELETE of its old path and an ADD of its new one.
+     */
+    private Change unfold(File file, Change move) {
+        Change atPreviousFile = this.changes.get(move.previousFile);
+        if (atPreviousFile == null) {
+            this.changes.put(move.previousFile, new Change(move.directory, DELETE, null, move.previousSnapshot, null));
+        } else if (atPreviousFile.type == ADD) {
+            // Another file took the old path after the move
+            this.changes.put(move.previousFile, new Change(move.directory, MODIFY, null,
+                    move.previousSnapshot, atPreviousFile.currentSnapshot));
+        }
+        Change added = new Change(move.directory, ADD, null, null, move.currentSnapshot);
+        this.changes.put(file, added);
+        return added;
+    }
+
+    /**
+     * Return the type of the net change, {@code null} if there is none.
+     */
+    private static ChangedFile.Type merge(ChangedFile.Type previous, ChangedFile.Type next) {
+        return switch (next) {
+            case ADD -> (previous == DELETE) ? MODIFY : previous;
+            case MODIFY -> (previous == ADD) ? ADD : MODIFY;
+            // Appending to an added or modified file is still an addition or a modification
+            case APPEND -> (previous == DELETE) ? MODIFY : previous;
+            case DELETE -> (previous == ADD) ? null : DELETE;
+            // Handled by add() and addMove()
+            case MOVE, DIRECTORY_ADDED, DIRECTORY_DELETED -> throw new IllegalStateException("Unexpected " + next);
+        };
+    }
+
+    int size() {
+        return this.changes.size();
+    }
+
+    boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    void clear() {
+        this.changes.clear();
+    }
+
+    /**
+     * Remove and return the oldest pending change, {@code null} if there is none.
+     */
+    ChangedFile poll() {
+        Iterator<Map.Entry<File, Change>> iterator = this.changes.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<File, Change> entry = iterator.next();
+        iterator.remove();
+        return entry.getValue().toChangedFile(entry.getKey());
+    }
+
+    /**
+     * Remove all pending changes, grouped by directory.
+     */
+    Set<ChangedFiles> drain() {
+        Map<File, Set<ChangedFile>> byDirectory = new LinkedHashMap<>();
+        this.changes.forEach((file, change) -> byDirectory
+                .computeIfAbsent(change.directory, (directory) -> new LinkedHashSet<>())
+                .add(change.toChangedFile(file)));
+        this.changes.clear();
+        Set<ChangedFiles> changeSet = new LinkedHashSet<>();
+        byDirectory.forEach((directory, files) -> changeSet.add(new ChangedFiles(directory, files)));
+        return Collections.unmodifiableSet(changeSet);
+    }
+
+    private record Change(File directory, ChangedFile.Type type, File previousFile,
+                          FileSnapshot previousSnapshot, FileSnapshot currentSnapshot) {
+
+        ChangedFile toChangedFile(File file) {
+            return (this.type == MOVE)
+                    ? new ChangedFile(this.directory, file, this.previousFile, this.previousSnapshot, this.currentSnapshot)
+                    : new ChangedFile(this.directory, file, this.type, this.previousSnapshot, this.currentSnapshot);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.dk900912.filewatcher.listener;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bridges the push-style {@link FileChangeListener} callbacks to {@link Flow.Publisher}s honouring
+ * subscriber demand, either one {@link ChangedFile} at a time ({@link #files()}) or one change set
+ * at a time ({@link #changeSets()}).
+ *
+ * <p>Every subscription buffers its own pending changes, so a subscriber that stops requesting never
+ * holds up detection nor the other subscribers. Pending changes are coalesced by path, the latest state
+ * winning (see {@link CoalescedChanges}); a change set subscriber requesting one item receives all of
+ * its pending changes at once. Once more than {@code bufferLimit} distinct files are pending, the
+ * subscription is cancelled and the subscriber receives {@link Flow.Subscriber#onError} with a
+ * {@link IllegalStateException}.
+ *
+ * <p>Subscribers are signalled serially, on the executor, never on the thread detecting the changes.
+ *
+ * @author dukui
+ */
+public class FileChangePublisher implements FileChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileChangePublisher.class);
+
+    private final List<ChangeSubscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final Executor executor;
+
+    private final int bufferLimit;
+
+    /**
+     * Signal subscribers on virtual threads.
+     *
+     * @param bufferLimit the number of distinct pending files above which a subscription fails
+     */
+    public FileChangePublisher(int bufferLimit) {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-change-publisher-", 0).factory()), bufferLimit);
+    }
+
+    /**
+     * @param executor the executor signalling subscribers
+     * @param bufferLimit the number of distinct pending files above which a subscription fails
+     */
+    public FileChangePublisher(Executor executor, int bufferLimit) {
+        Assert.notNull(executor, "Executor must not be null");
+        Assert.isTrue(bufferLimit > 0, "BufferLimit must be positive");
+        this.executor = executor;
+        this.bufferLimit = bufferLimit;
+    }
+
+    /**
+     * Return a publisher of the individual changes.
+     *
+     * @return the publisher
+     */
+    public Flow.Publisher<ChangedFile> files() {
+        return (subscriber) -> subscribe(new ChangeSubscription<ChangedFile>(subscriber) {
+            @Override
+            ChangedFile take(CoalescedChanges pending) {
+                return pending.poll();
+            }
+        });
+    }
+
+    /**
+     * Return a publisher of change sets, each item holding every change pending when it was requested.
+     *
+     * @return the publisher
+     */
+    public Flow.Publisher<Set<ChangedFiles>> changeSets() {
+        return (subscriber) -> subscribe(new ChangeSubscription<Set<ChangedFiles>>(subscriber) {
+            @Override
+            Set<ChangedFiles> take(CoalescedChanges pending) {
+                return pending.isEmpty() ? null : pending.drain();
+            }
+        });
+    }
+
+    private void subscribe(ChangeSubscription<?> subscription) {
+        this.subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    @Override
+    public void onChange(Set<ChangedFiles> changeSet) {
+        for (ChangeSubscription<?> subscription : this.subscriptions) {
+            subscription.offer(changeSet);
+        }
+    }
+
+    /**
+     * Return the number of active subscriptions.
+     *
+     * @return the subscription count
+     */
+    public int getSubscriptionCount() {
+        return this.subscriptions.size();
+    }
+
+    private abstract class ChangeSubscription<T> implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        // Guarded by itself
+        private final CoalescedChanges pending = new CoalescedChanges();
+
+        private final AtomicLong demand = new AtomicLong();
+
+        // Number of signals missed while draining, drain() only ever runs on one thread at a time
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private boolean subscribed;
+
+        private volatile boolean cancelled;
+
+        private volatile Throwable error;
+
+        private ChangeSubscription(Flow.Subscriber<? super T> subscriber) {
+            Assert.notNull(subscriber, "Subscriber must not be null");
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Remove the next item to deliver from the pending changes, {@code null} if there is none.
+         */
+        abstract T take(CoalescedChanges pending);
+
+        void offer(Set<ChangedFiles> changeSet) {
+            synchronized (this.pending) {
+                this.pending.add(changeSet);
+                if (this.pending.size() > bufferLimit && this.error == null) {
+                    this.error = new IllegalStateException("More than " + bufferLimit
+                            + " changed files are pending, the subscriber does not keep up");
+                }
+            }
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.error = new IllegalArgumentException("Requested items must be positive, but was " + n);
+            } else {
+                this.demand.getAndAccumulate(n, (current, added) -> {
+                    long sum = current + added;
+                    return (sum < 0) ? Long.MAX_VALUE : sum;
+                });
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            signal();
+        }
+
+        void signal() {
+            if (this.wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    logger.error("Failed to signal subscriber '{}'", this.subscriber, e);
+                    this.cancelled = true;
+                    subscriptions.remove(this);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!this.subscribed) {
+                    this.subscribed = true;
+                    this.subscriber.onSubscribe(this);
+                }
+                while (!this.cancelled) {
+                    if (this.error != null) {
+                        this.cancelled = true;
+                        this.subscriber.onError(this.error);
+                        break;
+                    }
+                    if (this.demand.get() == 0) {
+                        break;
+                    }
+                    T item;
+                    synchronized (this.pending) {
+                        item = take(this.pending);
+                    }
+                    if (item == null) {
+                        break;
+                    }
+                    this.demand.decrementAndGet();
+                    try {
+                        this.subscriber.onNext(item);
+                    } catch (RuntimeException e) {
+                        logger.error("Subscriber '{}' failed to handle file changes, cancelling", this.subscriber, e);
+                        this.cancelled = true;
+                    }
+                }
+                if (this.cancelled) {
+                    subscriptions.remove(this);
+                    synchronized (this.pending) {
+                        this.pending.clear();
+                    }
+                }
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -4,9 +4,16 @@ import io.github.dk900912.filewatcher.utils.Assert;
 import io.github.dk900912.filewatcher.utils.StringUtil;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
 
 /**
- * A single file that has changed.
+ * A single file that has changed. The snapshots it was detected from, if any, take no part in equality.
  *
  * @author dukui
  * @see ChangedFiles
@@ -19,6 +26,15 @@ public final class ChangedFile {
 
     private final Type type;
 
+    private final File previousFile;
+
+    private final FileSnapshot previousSnapshot;
+
+    private final FileSnapshot currentSnapshot;
+
+    // Only for directory changes
+    private final Collection<FileSnapshot> members;
+
     /**
      * Create a new {@link ChangedFile} instance.
      *
@@ -27,12 +43,80 @@ public final class ChangedFile {
      * @param type      the type of change detected (ADD/MODIFY/DELETE)
      */
     public ChangedFile(File directory, File file, Type type) {
+        this(directory, file, type, null, null, null);
+    }
+
+    /**
+     * Create a new {@link ChangedFile} instance carrying the snapshots the change was detected from.
+     *
+     * @param directory        the directory where the file resides
+     * @param file             the specific file that was changed (must be a descendant of the directory)
+     * @param type             the type of change detected (ADD/MODIFY/DELETE/APPEND)
+     * @param previousSnapshot the snapshot before the change, {@code null} for an ADD
+     * @param currentSnapshot  the snapshot after the change, {@code null} for a DELETE
+     */
+    public ChangedFile(File directory, File file, Type type, FileSnapshot previousSnapshot, FileSnapshot currentSnapshot) {
+        this(directory, file, type, null, previousSnapshot, currentSnapshot);
+    }
+
+    /**
+     * Create a new {@link ChangedFile} instance for a file moved within the watched directory.
+     *
+     * @param directory    the directory where the file resides
+     * @param file         the new path of the file (must be a descendant of the directory)
+     * @param previousFile the path the file was moved from (must be a descendant of the directory)
+     */
+    public ChangedFile(File directory, File file, File previousFile) {
+        this(directory, file, Type.MOVE, previousFile, null, null);
+    }
+
+    /**
+     * Create a new {@link ChangedFile} instance for a file moved within the watched directory, carrying
+     * the snapshots the move was detected from.
+     *
+     * @param directory        the directory where the file resides
+     * @param file             the new path of the file (must be a descendant of the directory)
+     * @param previousFile     the path the file was moved from (must be a descendant of the directory)
+     * @param previousSnapshot the snapshot of the previous path before the move
+     * @param currentSnapshot  the snapshot of the new path after the move
+     */
+    public ChangedFile(File directory, File file, File previousFile, FileSnapshot previousSnapshot, FileSnapshot currentSnapshot) {
+        this(directory, file, Type.MOVE, previousFile, previousSnapshot, currentSnapshot);
+    }
+
+    /**
+     * Create a new {@link ChangedFile} instance for a subdirectory that appeared or disappeared with all its files.
+     *
+     * @param directory    the directory where the subdirectory resides
+     * @param subdirectory the subdirectory (must be a descendant of the directory)
+     * @param type         the type of change detected (DIRECTORY_ADDED/DIRECTORY_DELETED)
+     * @param members      the snapshots of the files added or deleted along with the subdirectory
+     */
+    public ChangedFile(File directory, File subdirectory, Type type, Collection<FileSnapshot> members) {
+        this(directory, subdirectory, type, null, null, null, members);
+    }
+
+    private ChangedFile(File directory, File file, Type type, File previousFile,
+                        FileSnapshot previousSnapshot, FileSnapshot currentSnapshot) {
+        this(directory, file, type, previousFile, previousSnapshot, currentSnapshot, null);
+    }
+
+    private ChangedFile(File directory, File file, Type type, File previousFile,
+                        FileSnapshot previousSnapshot, FileSnapshot currentSnapshot, Collection<FileSnapshot> members) {
         Assert.notNull(directory, "Directory must not be null");
         Assert.notNull(file, "File must not be null");
         Assert.notNull(type, "Type must not be null");
+        Assert.isTrue((type == Type.MOVE) == (previousFile != null), "PreviousFile must be given for, and only for, MOVE");
+        Assert.isTrue(type != Type.APPEND || (previousSnapshot != null && currentSnapshot != null
+                && previousSnapshot.getLength() < currentSnapshot.getLength()), "APPEND must grow from the previous snapshot");
+        Assert.isTrue(type.isDirectoryChange() == (members != null), "Members must be given for, and only for, directory changes");
         this.directory = directory;
         this.file = file;
         this.type = type;
+        this.previousFile = previousFile;
+        this.previousSnapshot = previousSnapshot;
+        this.currentSnapshot = currentSnapshot;
+        this.members = members;
     }
 
     public File getFile() {
@@ -43,6 +127,151 @@ public final class ChangedFile {
         return this.type;
     }
 
+    /**
+     * Return the path the file was moved from if the change is a {@link Type#MOVE}, {@code null} otherwise.
+     *
+     * @return the previous path
+     */
+    public File getPreviousFile() {
+        return this.previousFile;
+    }
+
+    /**
+     * Return the snapshot of the file before the change (of its previous path for a {@link Type#MOVE}),
+     * so that its length, last modified time and file key are known without touching the file system.
+     * {@code null} for an {@link Type#ADD}, or if the change was not detected by diffing snapshots.
+     *
+     * @return the snapshot before the change
+     */
+    public FileSnapshot getPreviousSnapshot() {
+        return this.previousSnapshot;
+    }
+
+    /**
+     * Return the snapshot of the file after the change, so that its length, last modified time and file
+     * key are known without touching the file system. {@code null} for a {@link Type#DELETE}, or if the
+     * change was not detected by diffing snapshots.
+     *
+     * @return the snapshot after the change
+     */
+    public FileSnapshot getCurrentSnapshot() {
+        return this.currentSnapshot;
+    }
+
+    /**
+     * Return the offset of the first appended byte, i.e. the length of the file before an {@link Type#APPEND}.
+     *
+     * @return the start offset (inclusive)
+     */
+    public long getStartOffset() {
+        Assert.state(this.type == Type.APPEND, () -> "Offsets are only known for APPEND, not for " + this.type);
+        return this.previousSnapshot.getLength();
+    }
+
+    /**
+     * Return the offset following the last appended byte, i.e. the length of the file after an {@link Type#APPEND}.
+     *
+     * @return the end offset (exclusive)
+     */
+    public long getEndOffset() {
+        Assert.state(this.type == Type.APPEND, () -> "Offsets are only known for APPEND, not for " + this.type);
+        return this.currentSnapshot.getLength();
+    }
+
+    /**
+     * Return the files added or deleted along with the subdirectory of a {@link Type#DIRECTORY_ADDED} or
+     * {@link Type#DIRECTORY_DELETED}, as {@link Type#ADD}s or {@link Type#DELETE}s respectively, nothing for
+     * other changes. Each {@link ChangedFile} is only created while iterating, so that listeners that do
+     * not need them do not pay for them.
+     *
+     * @return the member changes
+     */
+    public Iterable<ChangedFile> getMembers() {
+        if (this.members == null) {
+            return Collections.emptyList();
+        }
+        return () -> this.members.stream()
+                .map(snapshot -> (this.type == Type.DIRECTORY_ADDED)
+                        ? new ChangedFile(this.directory, snapshot.getFile(), Type.ADD, null, snapshot)
+                        : new ChangedFile(this.directory, snapshot.getFile(), Type.DELETE, snapshot, null))
+                .iterator();
+    }
+
+    /**
+     * Return the number of files of a directory change, zero for other changes.
+     *
+     * @return the member count
+     */
+    public int getMemberCount() {
+        return (this.members != null) ? this.members.size() : 0;
+    }
+
+    /**
+     * Open the file for reading through a {@link FileChannel} shared with the other listeners reading it
+     * concurrently. The lease must be closed, but never the channel itself.
+     *
+     * @return the lease on the shared channel
+     * @throws IOException if the file cannot be opened
+     */
+    public SharedFileChannel openChannel() throws IOException {
+        Assert.state(this.type != Type.DELETE && !this.type.isDirectoryChange(),
+                () -> "The " + this.type + " change of " + this.file + " has no content");
+        return SharedFileChannel.open(this.file);
+    }
+
+    /**
+     * Map the changed region of the file read-only: the appended bytes for an {@link Type#APPEND}, the
+     * whole file (as of the current snapshot, if any) otherwise. The mapping remains valid once the
+     * channel is released.
+     *
+     * @return the mapped region
+     * @throws IOException if the file cannot be read
+     */
+    public MappedByteBuffer map() throws IOException {
+        try (SharedFileChannel channel = openChannel()) {
+            long[] region = getRegion(channel.getChannel());
+            long size = region[1] - region[0];
+            Assert.state(size <= Integer.MAX_VALUE, () -> "The changed region of " + this.file + " is too large to be mapped");
+            return channel.getChannel().map(FileChannel.MapMode.READ_ONLY, region[0], size);
+        }
+    }
+
+    /**
+     * Transfer the changed region of the file, as for {@link #map()}, to the given channel, without copying
+     * it through the heap where the platform allows (e.g. to a socket or another file).
+     *
+     * @param target the channel to write to
+     * @return the number of bytes transferred
+     * @throws IOException if the file cannot be read or the target written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        Assert.notNull(target, "Target must not be null");
+        try (SharedFileChannel channel = openChannel()) {
+            long[] region = getRegion(channel.getChannel());
+            long position = region[0];
+            while (position < region[1]) {
+                long transferred = channel.getChannel().transferTo(position, region[1] - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - region[0];
+        }
+    }
+
+    /**
+     * Return the start (inclusive) and end (exclusive) offsets of the changed region, within the current size.
+     */
+    private long[] getRegion(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long start = (this.type == Type.APPEND) ? getStartOffset() : 0L;
+        long end = (this.currentSnapshot != null) ? this.currentSnapshot.getLength() : size;
+        // The file may have been truncated since it was snapshot
+        end = Math.min(end, size);
+        return new long[] {Math.min(start, end), end};
+    }
+
     /**
      * Return the name of the file relative to the directory.
      *
@@ -67,7 +296,8 @@ public final class ChangedFile {
             return false;
         }
         if (obj instanceof ChangedFile other) {
-            return this.file.equals(other.file) && this.type.equals(other.type);
+            return this.file.equals(other.file) && this.type.equals(other.type)
+                    && Objects.equals(this.previousFile, other.previousFile);
         }
         return super.equals(obj);
     }
@@ -79,6 +309,12 @@ public final class ChangedFile {
 
     @Override
     public String toString() {
+        if (this.previousFile != null) {
+            return this.file + " (" + this.type + " from " + this.previousFile + ")";
+        }
+        if (this.members != null) {
+            return this.file + " (" + this.type + ", " + this.members.size() + " files)";
+        }
         return this.file + " (" + this.type + ")";
     }
 
@@ -100,7 +336,38 @@ public final class ChangedFile {
         /**
          * An existing file has been deleted.
          */
-        DELETE
+        DELETE,
+
+        /**
+         * Bytes have been appended to an existing file, the rest of it being unchanged, see
+         * {@link ChangedFile#getStartOffset()} and {@link ChangedFile#getEndOffset()}. Only reported for the files
+         * subject to append detection, others being reported as {@link #MODIFY}.
+         */
+        APPEND,
+
+        /**
+         * An existing file has been moved (renamed) within the same watched directory, see {@link ChangedFile#getPreviousFile()}.
+         */
+        MOVE,
+
+        /**
+         * A subdirectory has appeared along with the files it holds, see {@link ChangedFile#getMembers()}.
+         */
+        DIRECTORY_ADDED,
+
+        /**
+         * A subdirectory has disappeared along with the files it held, see {@link ChangedFile#getMembers()}.
+         */
+        DIRECTORY_DELETED;
+
+        /**
+         * Return whether the change concerns a whole subdirectory rather than a single file.
+         *
+         * @return whether it is a directory change
+         */
+        public boolean isDirectoryChange() {
+            return this == DIRECTORY_ADDED || this == DIRECTORY_DELETED;
+        }
     }
 
 }
\ No newline at end of file
@@ -4,15 +4,24 @@ import io.github.dk900912.filewatcher.utils.Assert;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
 import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DIRECTORY_ADDED;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DIRECTORY_DELETED;
 import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
@@ -26,25 +35,62 @@ public class DirectorySnapshot {
     private static final Set<String> DOTS
             = Set.of(".", "..");
 
+    // Coarsest directory timestamp granularity we have to cope with (FAT, some NFS servers)
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
     private final File directory;
 
     private final LocalDateTime time;
 
     private final Set<FileSnapshot> files;
 
+    private final Map<File, Long> directoryTimes;
+
     /**
      * Create a new {@link DirectorySnapshot} for the given directory.
      *
      * @param directory the directory
      */
     public DirectorySnapshot(File directory) {
+        this(directory, IoRateLimiter.UNLIMITED);
+    }
+
+    /**
+     * Create a new {@link DirectorySnapshot} for the given directory, each directory listing and file
+     * stat taking a token from the given rate limiter.
+     *
+     * @param directory the directory
+     * @param rateLimiter the rate limiter of the file system operations
+     */
+    public DirectorySnapshot(File directory, IoRateLimiter rateLimiter) {
+        this(directory, rateLimiter, Deadline.NONE);
+    }
+
+    /**
+     * Create a new {@link DirectorySnapshot} for the given directory as for
+     * {@link #DirectorySnapshot(File, IoRateLimiter)}, abandoning the walk as soon as it reaches a
+     * directory after the current thread was interrupted or the timeout elapsed.
+     *
+     * @param directory the directory
+     * @param rateLimiter the rate limiter of the file system operations
+     * @param timeout the time allowed to take the snapshot, {@code null} for no limit
+     * @throws ScanAbortedException if the walk was abandoned
+     */
+    public DirectorySnapshot(File directory, IoRateLimiter rateLimiter, Duration timeout) {
+        this(directory, rateLimiter, Deadline.after(timeout));
+    }
+
+    private DirectorySnapshot(File directory, IoRateLimiter rateLimiter, Deadline deadline) {
         Assert.notNull(directory, "Directory must not be null");
+        Assert.notNull(rateLimiter, "IoRateLimiter must not be null");
         Assert.isTrue(!directory.isFile(), () -> "Directory '" + directory + "' must not be a file");
         this.directory = directory;
         this.time = LocalDateTime.now();
         Set<FileSnapshot> files = new LinkedHashSet<>();
-        collectFiles(directory, files);
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        collectFiles(directory, files, directoryTimes, rateLimiter, deadline);
         this.files = Collections.unmodifiableSet(files);
+        this.directoryTimes = Collections.unmodifiableMap(directoryTimes);
     }
 
     /**
@@ -55,11 +101,424 @@ public class DirectorySnapshot {
      * @param files the immutable set of file snapshots
      */
     public DirectorySnapshot(File directory, LocalDateTime time, Set<FileSnapshot> files) {
+        this(directory, time, files, Collections.emptyMap());
+    }
+
+    /**
+     * Constructs a new DirectorySnapshot instance. This constructor is intended for internal use only.
+     *
+     * @param directory the directory to snapshot must not be null
+     * @param time the exact snapshot capture time
+     * @param files the immutable set of file snapshots
+     * @param directoryTimes the last modified time of every directory visited, keyed by directory
+     */
+    public DirectorySnapshot(File directory, LocalDateTime time, Set<FileSnapshot> files, Map<File, Long> directoryTimes) {
         Assert.notNull(directory, "Directory must not be null");
         Assert.isTrue(!directory.isFile(), () -> "Directory '" + directory + "' must not be a file");
+        Assert.notNull(directoryTimes, "DirectoryTimes must not be null");
         this.directory = directory;
         this.time = time;
         this.files = files;
+        this.directoryTimes = directoryTimes;
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory, re-listing only those directories whose
+     * last modified time differs from the one recorded in {@code previous}. Adding, removing or renaming
+     * an entry always touches its parent directory, so an unchanged directory still holds the same entries
+     * and only its files need to be stat-ed again (which is done in parallel unless rate limited) to detect
+     * modifications.
+     * <p>
+     * Directories modified within the timestamp granularity of the previous snapshot are always re-listed,
+     * since a later change could have left their time untouched. If {@code previous} carries no directory
+     * times (e.g. restored from a legacy snapshot), a full walk is performed.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @return the new snapshot
+     */
+    public static DirectorySnapshot reconcile(DirectorySnapshot previous) {
+        return reconcile(previous, IoRateLimiter.UNLIMITED);
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory as for {@link #reconcile(DirectorySnapshot)},
+     * each directory listing and file stat taking a token from the given rate limiter.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param rateLimiter the rate limiter of the file system operations
+     * @return the new snapshot
+     */
+    public static DirectorySnapshot reconcile(DirectorySnapshot previous, IoRateLimiter rateLimiter) {
+        return reconcile(previous, rateLimiter, Deadline.NONE);
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory as for
+     * {@link #reconcile(DirectorySnapshot, IoRateLimiter)}, abandoning the walk as soon as it reaches a
+     * directory, or a file to stat again, after the current thread was interrupted or the timeout elapsed.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param rateLimiter the rate limiter of the file system operations
+     * @param timeout the time allowed to take the snapshot, {@code null} for no limit
+     * @return the new snapshot
+     * @throws ScanAbortedException if the walk was abandoned
+     */
+    public static DirectorySnapshot reconcile(DirectorySnapshot previous, IoRateLimiter rateLimiter, Duration timeout) {
+        return reconcile(previous, rateLimiter, Deadline.after(timeout));
+    }
+
+    private static DirectorySnapshot reconcile(DirectorySnapshot previous, IoRateLimiter rateLimiter, Deadline deadline) {
+        Assert.notNull(previous, "DirectorySnapshot must not be null");
+        Assert.notNull(rateLimiter, "IoRateLimiter must not be null");
+        if (previous.directoryTimes.isEmpty()) {
+            return new DirectorySnapshot(previous.directory, rateLimiter, deadline);
+        }
+        LocalDateTime time = LocalDateTime.now();
+        long racyThreshold = (previous.time != null)
+                ? previous.time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - TIMESTAMP_GRANULARITY_MILLIS
+                : Long.MIN_VALUE;
+        Map<File, List<File>> previousFiles = new LinkedHashMap<>();
+        for (FileSnapshot file : previous.files) {
+            previousFiles.computeIfAbsent(file.getFile().getParentFile(), k -> new ArrayList<>()).add(file.getFile());
+        }
+        Map<File, List<File>> previousDirectories = new LinkedHashMap<>();
+        for (File directory : previous.directoryTimes.keySet()) {
+            if (!directory.equals(previous.directory)) {
+                previousDirectories.computeIfAbsent(directory.getParentFile(), k -> new ArrayList<>()).add(directory);
+            }
+        }
+        List<File> candidates = new ArrayList<>();
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        reconcileFiles(previous.directory, previous.directoryTimes, racyThreshold,
+                previousFiles, previousDirectories, candidates, directoryTimes, rateLimiter, deadline);
+        Set<FileSnapshot> files = new LinkedHashSet<>();
+        // Pool workers are never interrupted themselves
+        Thread scanning = Thread.currentThread();
+        // The rate limiter serialises the stats anyway, and would hold up the common pool while waiting
+        Stream<File> stream = (rateLimiter == IoRateLimiter.UNLIMITED) ? candidates.parallelStream() : candidates.stream();
+        stream.map(file -> {
+                    deadline.check(scanning, file, "stat-ing");
+                    rateLimiter.acquire();
+                    return statFile(file);
+                })
+                .toList()
+                .forEach(file -> {
+                    if (file != null) {
+                        files.add(file);
+                    }
+                });
+        return new DirectorySnapshot(previous.directory, time,
+                Collections.unmodifiableSet(files), Collections.unmodifiableMap(directoryTimes));
+    }
+
+    private static void reconcileFiles(File directory,
+                                       Map<File, Long> previousTimes,
+                                       long racyThreshold,
+                                       Map<File, List<File>> previousFiles,
+                                       Map<File, List<File>> previousDirectories,
+                                       List<File> candidates,
+                                       Map<File, Long> directoryTimes,
+                                       IoRateLimiter rateLimiter,
+                                       Deadline deadline) {
+        deadline.check(directory);
+        // Read the time before listing, so that a concurrent change is picked up by the next scan
+        long lastModified = directory.lastModified();
+        directoryTimes.put(directory, lastModified);
+        Long previousTime = previousTimes.get(directory);
+        if (previousTime != null && previousTime == lastModified && lastModified < racyThreshold) {
+            // Same entries as before: re-stat the known files and descend into the known subdirectories
+            candidates.addAll(previousFiles.getOrDefault(directory, List.of()));
+            for (File child : previousDirectories.getOrDefault(directory, List.of())) {
+                reconcileFiles(child, previousTimes, racyThreshold, previousFiles, previousDirectories, candidates, directoryTimes, rateLimiter, deadline);
+            }
+            return;
+        }
+        rateLimiter.acquire();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory() && !DOTS.contains(child.getName())) {
+                    reconcileFiles(child, previousTimes, racyThreshold, previousFiles, previousDirectories, candidates, directoryTimes, rateLimiter, deadline);
+                } else if (child.isFile()) {
+                    candidates.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory, walking only one of its {@code slices}
+     * slices and carrying the others forward from {@code previous} unchanged. The entries of the directory
+     * are assigned to a slice by name, along with everything below them, so that scanning every slice in
+     * turn covers the whole tree once every {@code slices} scans. Changes outside the walked slice go
+     * unnoticed until its turn comes.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param slice the slice to walk, from {@code 0} to {@code slices - 1}
+     * @param slices the number of slices
+     * @param rateLimiter the rate limiter of the file system operations
+     * @return the new snapshot
+     */
+    public static DirectorySnapshot scanSlice(DirectorySnapshot previous, int slice, int slices, IoRateLimiter rateLimiter) {
+        return scanSlice(previous, slice, slices, rateLimiter, Deadline.NONE);
+    }
+
+    /**
+     * Take a new snapshot of one slice of the previous snapshot's directory as for
+     * {@link #scanSlice(DirectorySnapshot, int, int, IoRateLimiter)}, abandoning the walk as soon as it
+     * reaches a directory after the current thread was interrupted or the timeout elapsed.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param slice the slice to walk, from {@code 0} to {@code slices - 1}
+     * @param slices the number of slices
+     * @param rateLimiter the rate limiter of the file system operations
+     * @param timeout the time allowed to take the snapshot, {@code null} for no limit
+     * @return the new snapshot
+     * @throws ScanAbortedException if the walk was abandoned
+     */
+    public static DirectorySnapshot scanSlice(DirectorySnapshot previous, int slice, int slices, IoRateLimiter rateLimiter,
+                                              Duration timeout) {
+        return scanSlice(previous, slice, slices, rateLimiter, Deadline.after(timeout));
+    }
+
+    private static DirectorySnapshot scanSlice(DirectorySnapshot previous, int slice, int slices, IoRateLimiter rateLimiter,
+                                               Deadline deadline) {
+        Assert.notNull(previous, "DirectorySnapshot must not be null");
+        Assert.isTrue(slices > 0, "Slices must be positive");
+        Assert.isTrue(slice >= 0 && slice < slices, () -> "Slice must be between 0 and " + (slices - 1));
+        Assert.notNull(rateLimiter, "IoRateLimiter must not be null");
+        File directory = previous.directory;
+        LocalDateTime time = LocalDateTime.now();
+        Set<FileSnapshot> files = new LinkedHashSet<>();
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        directoryTimes.put(directory, directory.lastModified());
+        for (FileSnapshot file : previous.files) {
+            if (getSlice(directory, file.getFile(), slices) != slice) {
+                files.add(file);
+            }
+        }
+        for (Map.Entry<File, Long> entry : previous.directoryTimes.entrySet()) {
+            if (!entry.getKey().equals(directory) && getSlice(directory, entry.getKey(), slices) != slice) {
+                directoryTimes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        deadline.check(directory);
+        rateLimiter.acquire();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (getSlice(directory, child, slices) != slice) {
+                    continue;
+                }
+                rateLimiter.acquire();
+                if (child.isDirectory() && !DOTS.contains(child.getName())) {
+                    collectFiles(child, files, directoryTimes, rateLimiter, deadline);
+                } else if (child.isFile()) {
+                    files.add(new FileSnapshot(child));
+                }
+            }
+        }
+        return new DirectorySnapshot(directory, time,
+                Collections.unmodifiableSet(files), Collections.unmodifiableMap(directoryTimes));
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory, walking only the directories in which a
+     * trigger file (e.g. a {@code _SUCCESS} or {@code .ready} marker written once a batch is complete)
+     * appeared, changed or disappeared, and carrying everything else forward from {@code previous}:
+     *
+     * <pre>
+     * known triggers        ── stat ──────────────┐
+     * modified directories  ── list ──▶ new ones ─┼──▶ parents walked, the rest carried forward
+     * new directories       ── list ──▶ new ones ─┘
+     * </pre>
+     *
+     * The trigger files known from {@code previous} and every directory it knows of are stat-ed, and only
+     * the directories whose last modified time differs (or is within the timestamp granularity of
+     * {@code previous}) are listed, so that files written without a trigger go unnoticed until one shows
+     * up. The new time of a directory listed without a trigger found is recorded, along with the new
+     * directories found below it, so that it is not listed again until modified once more. If a trigger
+     * shows up in the snapshot's directory itself, or if {@code previous} carries no directory times, a
+     * full walk is performed.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param triggers the filter accepting the trigger files
+     * @param rateLimiter the rate limiter of the file system operations
+     * @return the new snapshot, {@code previous} itself if no directory was listed
+     */
+    public static DirectorySnapshot scanTriggered(DirectorySnapshot previous, FileFilter triggers, IoRateLimiter rateLimiter) {
+        return scanTriggered(previous, triggers, rateLimiter, Deadline.NONE);
+    }
+
+    /**
+     * Take a new snapshot of the previous snapshot's directory as for
+     * {@link #scanTriggered(DirectorySnapshot, FileFilter, IoRateLimiter)}, abandoning the walk as soon as
+     * it reaches a directory after the current thread was interrupted or the timeout elapsed.
+     *
+     * @param previous the previous snapshot of the same directory
+     * @param triggers the filter accepting the trigger files
+     * @param rateLimiter the rate limiter of the file system operations
+     * @param timeout the time allowed to take the snapshot, {@code null} for no limit
+     * @return the new snapshot, {@code previous} itself if no directory was listed
+     * @throws ScanAbortedException if the walk was abandoned
+     */
+    public static DirectorySnapshot scanTriggered(DirectorySnapshot previous, FileFilter triggers, IoRateLimiter rateLimiter,
+                                                  Duration timeout) {
+        return scanTriggered(previous, triggers, rateLimiter, Deadline.after(timeout));
+    }
+
+    private static DirectorySnapshot scanTriggered(DirectorySnapshot previous, FileFilter triggers, IoRateLimiter rateLimiter,
+                                                   Deadline deadline) {
+        Assert.notNull(previous, "DirectorySnapshot must not be null");
+        Assert.notNull(triggers, "Triggers must not be null");
+        Assert.notNull(rateLimiter, "IoRateLimiter must not be null");
+        File directory = previous.directory;
+        if (previous.directoryTimes.isEmpty()) {
+            return new DirectorySnapshot(directory, rateLimiter, deadline);
+        }
+        LocalDateTime time = LocalDateTime.now();
+        long racyThreshold = (previous.time != null)
+                ? previous.time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - TIMESTAMP_GRANULARITY_MILLIS
+                : Long.MIN_VALUE;
+        Map<File, FileSnapshot> previousFiles = previous.getFilesMap();
+        // Directories holding a trigger that appeared, changed or disappeared
+        Set<File> triggered = new LinkedHashSet<>();
+        for (FileSnapshot file : previous.files) {
+            if (triggers.accept(file.getFile())) {
+                rateLimiter.acquire();
+                if (!file.equals(new FileSnapshot(file.getFile()))) {
+                    triggered.add(file.getFile().getParentFile());
+                }
+            }
+        }
+        // New times of the directories listed, the new ones found below them included
+        Map<File, Long> listed = new LinkedHashMap<>();
+        for (Map.Entry<File, Long> entry : previous.directoryTimes.entrySet()) {
+            deadline.check(entry.getKey());
+            rateLimiter.acquire();
+            long lastModified = entry.getKey().lastModified();
+            if (lastModified != entry.getValue() || entry.getValue() >= racyThreshold) {
+                findTriggers(entry.getKey(), lastModified, previousFiles, previous.directoryTimes, triggers, triggered, listed,
+                        rateLimiter, deadline);
+            }
+        }
+        if (triggered.isEmpty() && listed.isEmpty()) {
+            return previous;
+        }
+        if (triggered.contains(directory)) {
+            return new DirectorySnapshot(directory, rateLimiter, deadline);
+        }
+        Set<FileSnapshot> files = new LinkedHashSet<>();
+        for (FileSnapshot file : previous.files) {
+            if (!isWithin(file.getFile(), triggered)) {
+                files.add(file);
+            }
+        }
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        for (Map.Entry<File, Long> entry : previous.directoryTimes.entrySet()) {
+            if (!isWithin(entry.getKey(), triggered)) {
+                directoryTimes.put(entry.getKey(), listed.getOrDefault(entry.getKey(), entry.getValue()));
+            }
+        }
+        for (Map.Entry<File, Long> entry : listed.entrySet()) {
+            // The new directories found below the listed ones
+            if (!isWithin(entry.getKey(), triggered) && !directoryTimes.containsKey(entry.getKey())) {
+                directoryTimes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (File triggeredDirectory : triggered) {
+            // Unless below another one, or gone along with its trigger
+            if (!isWithin(triggeredDirectory.getParentFile(), triggered) && triggeredDirectory.isDirectory()) {
+                collectFiles(triggeredDirectory, files, directoryTimes, rateLimiter, deadline);
+            }
+        }
+        return new DirectorySnapshot(directory, time,
+                Collections.unmodifiableSet(files), Collections.unmodifiableMap(directoryTimes));
+    }
+
+    /**
+     * List the given directory, collecting into {@code triggered} the directories in which a trigger file
+     * unknown to the previous snapshot shows up, descending into the directories unknown to it as well,
+     * and into {@code listed} the time of every directory listed, read before listing it.
+     */
+    private static void findTriggers(File directory, long lastModified, Map<File, FileSnapshot> previousFiles,
+                                     Map<File, Long> previousDirectoryTimes, FileFilter triggers, Set<File> triggered,
+                                     Map<File, Long> listed, IoRateLimiter rateLimiter, Deadline deadline) {
+        listed.put(directory, lastModified);
+        rateLimiter.acquire();
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (previousFiles.containsKey(child) || previousDirectoryTimes.containsKey(child)) {
+                // Known triggers are stat-ed, known directories are listed if modified
+                continue;
+            }
+            rateLimiter.acquire();
+            if (child.isDirectory() && !DOTS.contains(child.getName())) {
+                deadline.check(child);
+                findTriggers(child, child.lastModified(), previousFiles, previousDirectoryTimes, triggers, triggered, listed,
+                        rateLimiter, deadline);
+            } else if (child.isFile() && triggers.accept(child)) {
+                triggered.add(directory);
+            }
+        }
+    }
+
+    private static boolean isWithin(File file, Set<File> directories) {
+        for (File current = file; current != null; current = current.getParentFile()) {
+            if (directories.contains(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the snapshot of the given directory below this snapshot's directory, holding the files and
+     * directory times recorded below it, as of the same time. Paths are compared as they are, so the
+     * directory must be given in the same form, relative or absolute, as this snapshot's directory.
+     *
+     * @param directory this snapshot's directory or one of its descendants
+     * @return the snapshot of the given directory
+     */
+    public DirectorySnapshot subtree(File directory) {
+        Assert.notNull(directory, "Directory must not be null");
+        Path root = directory.toPath();
+        Assert.isTrue(root.startsWith(this.directory.toPath()),
+                () -> "Directory '" + directory + "' must be within '" + this.directory + "'");
+        if (root.equals(this.directory.toPath())) {
+            return this;
+        }
+        Set<FileSnapshot> files = new LinkedHashSet<>();
+        for (FileSnapshot file : this.files) {
+            if (file.getFile().toPath().startsWith(root)) {
+                files.add(file);
+            }
+        }
+        Map<File, Long> directoryTimes = new LinkedHashMap<>();
+        for (Map.Entry<File, Long> entry : this.directoryTimes.entrySet()) {
+            if (entry.getKey().toPath().startsWith(root)) {
+                directoryTimes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new DirectorySnapshot(directory, this.time,
+                Collections.unmodifiableSet(files), Collections.unmodifiableMap(directoryTimes));
+    }
+
+    /**
+     * Return the slice of the given file or directory below {@code directory}, decided by the name of
+     * its ancestor that is an entry of {@code directory}.
+     */
+    static int getSlice(File directory, File file, int slices) {
+        String name = directory.toPath().relativize(file.toPath()).getName(0).toString();
+        return Math.floorMod(name.hashCode(), slices);
+    }
+
+    private static FileSnapshot statFile(File file) {
+        // The file may have been deleted or replaced by a directory since it was listed
+        return file.isFile() ? new FileSnapshot(file) : null;
     }
 
     /**
@@ -67,15 +526,24 @@ public class DirectorySnapshot {
      *
      * @param directory   The directory to process (recursively handles directories)
      * @param result The set to store collected directory snapshots (will be modified)
+     * @param directoryTimes The map to store the last modified time of each visited directory (will be modified)
+     * @param rateLimiter The rate limiter taking a token per listing and per entry
+     * @param deadline The deadline checked before listing each directory
      */
-    private void collectFiles(File directory, Set<FileSnapshot> result) {
+    private static void collectFiles(File directory, Set<FileSnapshot> result, Map<File, Long> directoryTimes,
+                                     IoRateLimiter rateLimiter, Deadline deadline) {
+        deadline.check(directory);
+        // Read the time before listing, so that a concurrent change is picked up by the next scan
+        directoryTimes.put(directory, directory.lastModified());
+        rateLimiter.acquire();
         File[] children = directory.listFiles();
         // Process all entries in the current directory
         if (children != null) {
             for (File child : children) {
+                rateLimiter.acquire();
                 // Recursively handle non-special directories (excluding "." and "..")
                 if (child.isDirectory() && !DOTS.contains(child.getName())) {
-                    collectFiles(child, result);
+                    collectFiles(child, result, directoryTimes, rateLimiter, deadline);
                 } else if (child.isFile()) {
                     // Add files to a result set
                     result.add(new FileSnapshot(child));
@@ -92,6 +560,47 @@ public class DirectorySnapshot {
      * @return the changed files
      */
     public ChangedFiles getChangedFiles(DirectorySnapshot snapshot, FileFilter fileFilter) {
+        return getChangedFiles(snapshot, fileFilter, false);
+    }
+
+    /**
+     * Get the changed files between this snapshot and the given one, optionally reporting a file that
+     * was moved as a single {@link ChangedFile.Type#MOVE} rather than an {@code ADD} of its new path
+     * followed by a {@code DELETE} of its old one.
+     * <p>
+     * An added and a deleted file are paired when they share the same file key and length. Both paths
+     * must be accepted by the filter; a file moved in or out of its scope is still reported as an
+     * {@code ADD} or a {@code DELETE}. Without file keys (e.g. the previous snapshot was restored from
+     * disk), no move is detected.
+     *
+     * @param snapshot the previous snapshot
+     * @param fileFilter the file filter
+     * @param detectMoves whether to pair additions and deletions of the same file into moves
+     * @return the changed files
+     */
+    public ChangedFiles getChangedFiles(DirectorySnapshot snapshot, FileFilter fileFilter, boolean detectMoves) {
+        return getChangedFiles(snapshot, fileFilter, detectMoves, false);
+    }
+
+    /**
+     * Get the changed files between this snapshot and the given one, as for
+     * {@link #getChangedFiles(DirectorySnapshot, FileFilter, boolean)}, optionally reporting all files of a
+     * subdirectory that appeared or disappeared as a whole as a single {@link ChangedFile.Type#DIRECTORY_ADDED}
+     * or {@link ChangedFile.Type#DIRECTORY_DELETED} of its topmost new or missing directory. Its members are
+     * only turned into {@link ChangedFile}s while being iterated, see {@link ChangedFile#getMembers()}.
+     * <p>
+     * Directories are compared using the directory times of both snapshots, so that no directory event is
+     * reported if either carries none (e.g. restored from a legacy snapshot). Directories without any
+     * accepted file are not reported, as before. Files moved in or out of such a directory are not paired.
+     *
+     * @param snapshot the previous snapshot
+     * @param fileFilter the file filter
+     * @param detectMoves whether to pair additions and deletions of the same file into moves
+     * @param directoryEvents whether to report whole directories appearing or disappearing as one change
+     * @return the changed files
+     */
+    public ChangedFiles getChangedFiles(DirectorySnapshot snapshot, FileFilter fileFilter, boolean detectMoves,
+                                        boolean directoryEvents) {
         Assert.notNull(snapshot, "DirectorySnapshot must not be null");
         File directory = this.directory;
         Assert.isTrue(snapshot.directory.equals(directory),
@@ -100,6 +609,8 @@ public class DirectorySnapshot {
         // Map of previous files (this snapshot) with File as a key.
         // File equality is determined by path string comparison (case-sensitive on some OS)
         Map<File, FileSnapshot> previousFiles = getFilesMap();
+        BulkDirectories addedDirectories = directoryEvents ? new BulkDirectories(this, snapshot) : null;
+        BulkDirectories deletedDirectories = directoryEvents ? new BulkDirectories(snapshot, this) : null;
         for (FileSnapshot currentFile : snapshot.files) {
             // Skip files not matching the filter
             if (acceptChangedFile(fileFilter, currentFile)) {
@@ -108,12 +619,16 @@ public class DirectorySnapshot {
                 // This means files with different path representations (even if pointing to the same physical file)
                 // will be considered different entries.
                 FileSnapshot previousFile = previousFiles.remove(currentFile.getFile());
+                if (previousFile == null && addedDirectories != null && addedDirectories.collect(currentFile)) {
+                    // Case 0: File added along with one of its ancestors, reported with it
+                    continue;
+                }
                 if (previousFile == null) {
                     // Case 1: File added (including renamed files - old path will appear as DELETE later)
-                    changes.add(new ChangedFile(directory, currentFile.getFile(), ADD));
+                    changes.add(new ChangedFile(directory, currentFile.getFile(), ADD, null, currentFile));
                 } else if (!previousFile.equals(currentFile)) {
                     // Case 2: File modified (content or metadata changed)
-                    changes.add(new ChangedFile(directory, currentFile.getFile(), MODIFY));
+                    changes.add(new ChangedFile(directory, currentFile.getFile(), MODIFY, previousFile, currentFile));
                 }
                 // Case 3: File unchanged - no action
             }
@@ -122,13 +637,170 @@ public class DirectorySnapshot {
         // - Deleted files (an original path no longer exists)
         // - Renamed files (original path will appear here as DELETE, new path already registered as ADD)
         for (FileSnapshot previousFile : previousFiles.values()) {
-            if (acceptChangedFile(fileFilter, previousFile)) {
-                changes.add(new ChangedFile(directory, previousFile.getFile(), DELETE));
+            if (acceptChangedFile(fileFilter, previousFile)
+                    && (deletedDirectories == null || !deletedDirectories.collect(previousFile))) {
+                changes.add(new ChangedFile(directory, previousFile.getFile(), DELETE, previousFile, null));
+            }
+        }
+        if (detectMoves) {
+            changes = pairMoves(directory, changes);
+        }
+        if (directoryEvents) {
+            for (Map.Entry<File, List<FileSnapshot>> added : addedDirectories.members.entrySet()) {
+                changes.add(new ChangedFile(directory, added.getKey(), DIRECTORY_ADDED, added.getValue()));
+            }
+            for (Map.Entry<File, List<FileSnapshot>> deleted : deletedDirectories.members.entrySet()) {
+                changes.add(new ChangedFile(directory, deleted.getKey(), DIRECTORY_DELETED, deleted.getValue()));
             }
         }
         return new ChangedFiles(directory, changes);
     }
 
+    /**
+     * Count the files changed between this snapshot and the given one, without building the
+     * {@link ChangedFile}s. Every path added, modified or deleted counts once, so a moved file counts
+     * twice and a directory change counts as many times as it has files.
+     *
+     * @param snapshot the previous snapshot
+     * @param fileFilter the file filter
+     * @return the number of changed files
+     */
+    public int countChanges(DirectorySnapshot snapshot, FileFilter fileFilter) {
+        Assert.notNull(snapshot, "DirectorySnapshot must not be null");
+        File directory = this.directory;
+        Assert.isTrue(snapshot.directory.equals(directory),
+                () -> "DirectorySnapshot's directory must be '" + directory + "'");
+        Map<File, FileSnapshot> previousFiles = getFilesMap();
+        int count = 0;
+        for (FileSnapshot currentFile : snapshot.files) {
+            FileSnapshot previousFile = previousFiles.remove(currentFile.getFile());
+            if (!currentFile.equals(previousFile) && acceptChangedFile(fileFilter, currentFile)) {
+                count++;
+            }
+        }
+        for (FileSnapshot previousFile : previousFiles.values()) {
+            if (acceptChangedFile(fileFilter, previousFile)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replace each ADD/DELETE pair of the same file (same file key and length) with a MOVE, keeping
+     * the position of the ADD.
+     */
+    private static Set<ChangedFile> pairMoves(File directory, Set<ChangedFile> changes) {
+        Map<Object, FileSnapshot> deletedByKey = new LinkedHashMap<>();
+        for (ChangedFile change : changes) {
+            if (change.getType() == DELETE && change.getPreviousSnapshot().getFileKey() != null) {
+                deletedByKey.putIfAbsent(change.getPreviousSnapshot().getFileKey(), change.getPreviousSnapshot());
+            }
+        }
+        if (deletedByKey.isEmpty()) {
+            return changes;
+        }
+        Set<File> moved = new LinkedHashSet<>();
+        Set<ChangedFile> paired = new LinkedHashSet<>();
+        for (ChangedFile change : changes) {
+            if (change.getType() == ADD) {
+                FileSnapshot added = change.getCurrentSnapshot();
+                FileSnapshot source = (added.getFileKey() != null) ? deletedByKey.get(added.getFileKey()) : null;
+                if (source != null && source.getLength() == added.getLength()) {
+                    deletedByKey.remove(added.getFileKey());
+                    moved.add(source.getFile());
+                    paired.add(new ChangedFile(directory, added.getFile(), source.getFile(), source, added));
+                    continue;
+                }
+            } else if (change.getType() == DELETE && moved.contains(change.getFile())) {
+                continue;
+            }
+            paired.add(change);
+        }
+        return paired;
+    }
+
+    /**
+     * When a cancellable walk must be abandoned: on interruption, and past the deadline if bounded.
+     */
+    private record Deadline(boolean cancellable, boolean bounded, long nanos) {
+
+        private static final Deadline NONE = new Deadline(false, false, 0);
+
+        private static Deadline after(Duration timeout) {
+            return (timeout != null)
+                    ? new Deadline(true, true, System.nanoTime() + timeout.toNanos())
+                    : new Deadline(true, false, 0);
+        }
+
+        private void check(File directory) {
+            check(Thread.currentThread(), directory, "listing");
+        }
+
+        /**
+         * Check the deadline on behalf of the given scanning thread, before the given operation on the file.
+         */
+        private void check(Thread scanning, File file, String operation) {
+            if (!this.cancellable) {
+                return;
+            }
+            if (scanning.isInterrupted()) {
+                throw new ScanAbortedException("Scan interrupted before " + operation + " '" + file + "'");
+            }
+            if (this.bounded && System.nanoTime() - this.nanos > 0) {
+                throw new ScanAbortedException("Scan exceeded its deadline before " + operation + " '" + file + "'");
+            }
+        }
+    }
+
+    /**
+     * Subdirectories present in one snapshot only, collecting the files found under each topmost one.
+     */
+    private static final class BulkDirectories {
+
+        private final Map<File, Long> before;
+
+        private final Map<File, Long> after;
+
+        // Topmost bulk directory by parent directory, null values caching the parents outside of any
+        private final Map<File, File> topmostByParent = new HashMap<>();
+
+        private final Map<File, List<FileSnapshot>> members = new LinkedHashMap<>();
+
+        private BulkDirectories(DirectorySnapshot before, DirectorySnapshot after) {
+            boolean comparable = !before.directoryTimes.isEmpty() && !after.directoryTimes.isEmpty();
+            this.before = comparable ? before.directoryTimes : Collections.emptyMap();
+            this.after = comparable ? after.directoryTimes : Collections.emptyMap();
+        }
+
+        /**
+         * Add the file to the members of its topmost bulk directory, if any.
+         *
+         * @return whether the file was collected
+         */
+        boolean collect(FileSnapshot file) {
+            if (this.after.isEmpty()) {
+                return false;
+            }
+            File parent = file.getFile().getParentFile();
+            File topmost = this.topmostByParent.computeIfAbsent(parent, this::findTopmost);
+            if (topmost == null) {
+                return false;
+            }
+            this.members.computeIfAbsent(topmost, (key) -> new ArrayList<>()).add(file);
+            return true;
+        }
+
+        private File findTopmost(File parent) {
+            File topmost = null;
+            for (File current = parent; current != null && this.after.containsKey(current) && !this.before.containsKey(current);
+                 current = current.getParentFile()) {
+                topmost = current;
+            }
+            return topmost;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -202,4 +874,15 @@ public class DirectorySnapshot {
     public Set<FileSnapshot> getFiles() {
         return files;
     }
+
+    /**
+     * Return the last modified time of every directory visited while taking this snapshot,
+     * including the snapshot's own directory. Empty if the snapshot was restored from a
+     * format that did not record them.
+     *
+     * @return the directory times keyed by directory
+     */
+    public Map<File, Long> getDirectoryTimes() {
+        return directoryTimes;
+    }
 }
\ No newline at end of file
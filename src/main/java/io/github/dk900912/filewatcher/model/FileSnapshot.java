@@ -3,10 +3,18 @@ package io.github.dk900912.filewatcher.model;
 import io.github.dk900912.filewatcher.utils.Assert;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * A snapshot of a File at a given point in time.
  *
+ * <p>Besides its length and last modified time, the snapshot records the file key of the underlying
+ * file system object (device and inode on Linux, see {@link BasicFileAttributes#fileKey()}), which
+ * survives renames and is used to pair the deletion and addition of a moved file. The file key takes
+ * no part in equality, since snapshots restored from disk do not carry it.
+ *
  * @author dukui
  */
 public class FileSnapshot {
@@ -19,13 +27,18 @@ public class FileSnapshot {
 
     private final long lastModified;
 
+    private final Object fileKey;
+
     public FileSnapshot(File file) {
         Assert.notNull(file, "File must not be null");
         Assert.isTrue(file.isFile() || !file.exists(), "File must not be a directory");
         this.file = file;
-        this.exists = file.exists();
-        this.length = file.length();
-        this.lastModified = file.lastModified();
+        // A single stat for all attributes, rather than one per attribute
+        BasicFileAttributes attributes = readAttributes(file);
+        this.exists = (attributes != null);
+        this.length = (attributes != null) ? attributes.size() : 0L;
+        this.lastModified = (attributes != null) ? attributes.lastModifiedTime().toMillis() : 0L;
+        this.fileKey = (attributes != null) ? attributes.fileKey() : null;
     }
 
     /**
@@ -37,12 +50,35 @@ public class FileSnapshot {
      * @param lastModified the last modified timestamp of the file
      */
     public FileSnapshot(File file, boolean exists, long length, long lastModified) {
+        this(file, exists, length, lastModified, null);
+    }
+
+    /**
+     * Constructs a new FileSnapshot instance. This constructor is intended for internal use only.
+     *
+     * @param file the file object to create a snapshot of
+     * @param exists the existence status of the file
+     * @param length the length of the file in bytes
+     * @param lastModified the last modified timestamp of the file
+     * @param fileKey the file key, {@code null} if unknown
+     */
+    public FileSnapshot(File file, boolean exists, long length, long lastModified, Object fileKey) {
         Assert.notNull(file, "File must not be null");
         Assert.isTrue(file.isFile() || !file.exists(), "File must not be a directory");
         this.file = file;
         this.exists = exists;
         this.length = length;
         this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    private static BasicFileAttributes readAttributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException ex) {
+            // Deleted in the meantime, or not accessible
+            return null;
+        }
     }
 
     public File getFile() {
@@ -92,4 +128,14 @@ public class FileSnapshot {
     public long getLastModified() {
         return lastModified;
     }
+
+    /**
+     * Return the key uniquely identifying the underlying file system object, {@code null} if the file
+     * system does not provide one or if the snapshot was restored from disk.
+     *
+     * @return the file key
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
 }
\ No newline at end of file
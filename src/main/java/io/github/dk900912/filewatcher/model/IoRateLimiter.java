@@ -0,0 +1,94 @@
+package io.github.dk900912.filewatcher.model;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket limiting the file system operations of the scans (directory listings and file stats),
+ * so that a scan of a large tree is spread over time rather than issued in a single burst:
+ *
+ * <pre>
+ * ┌──────── bucket ────────┐
+ * │ refilled at N / second │ ─▶ one token per listing or stat, waiting for it once empty
+ * │ up to N tokens         │
+ * └────────────────────────┘
+ * </pre>
+ *
+ * Tokens may be borrowed in advance: an operation finding the bucket empty waits for its own token only,
+ * so concurrent callers are served in turn. An interrupted thread no longer waits, so that an abandoned
+ * scan completes quickly. Thread-safe.
+ *
+ * @author dukui
+ */
+public final class IoRateLimiter {
+
+    /**
+     * Never waits.
+     */
+    public static final IoRateLimiter UNLIMITED = new IoRateLimiter();
+
+    private final double nanosPerPermit;
+
+    private final double capacity;
+
+    // Guarded by this, negative when borrowed in advance
+    private double tokens;
+
+    // Guarded by this
+    private long refilledAt;
+
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond the number of operations allowed per second, as well as the burst size
+     */
+    public IoRateLimiter(int permitsPerSecond) {
+        Assert.isTrue(permitsPerSecond > 0, "PermitsPerSecond must be positive");
+        this.nanosPerPermit = (double) TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.capacity = permitsPerSecond;
+        this.tokens = permitsPerSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    private IoRateLimiter() {
+        this.nanosPerPermit = 0;
+        this.capacity = 0;
+    }
+
+    /**
+     * Take a token for one operation, waiting for it if the bucket is empty.
+     */
+    public void acquire() {
+        if (this == UNLIMITED) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.capacity, this.tokens + (now - this.refilledAt) / this.nanosPerPermit);
+            this.refilledAt = now;
+            this.tokens--;
+            waitNanos = (this.tokens < 0) ? (long) (-this.tokens * this.nanosPerPermit) : 0;
+        }
+        if (waitNanos <= 0 || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        this.throttledNanos.addAndGet(waitNanos);
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Return the total time spent waiting for tokens, for monitoring purposes.
+     *
+     * @return the throttled time in nanoseconds
+     */
+    public long getThrottledNanos() {
+        return this.throttledNanos.get();
+    }
+}
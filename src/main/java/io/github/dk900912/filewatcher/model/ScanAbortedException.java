@@ -0,0 +1,16 @@
+package io.github.dk900912.filewatcher.model;
+
+/**
+ * Thrown when a cancellable snapshot is abandoned before completion, because the scanning thread was
+ * interrupted or the scan exceeded its deadline. No partial snapshot is ever returned.
+ *
+ * @author dukui
+ */
+public class ScanAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScanAbortedException(String message) {
+        super(message);
+    }
+}
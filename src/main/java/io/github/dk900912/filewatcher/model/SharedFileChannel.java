@@ -0,0 +1,164 @@
+package io.github.dk900912.filewatcher.model;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A lease on a read-only {@link FileChannel} shared by everyone reading the same file at the same time,
+ * typically the listeners of a single change: the file is opened by the first lease and closed with the
+ * last one.
+ *
+ * <pre>
+ * listener 1 ── openChannel() ──┐
+ * listener 2 ── openChannel() ──┼──▶ one FileChannel per file, reference counted
+ * listener 3 ── openChannel() ──┘
+ * </pre>
+ *
+ * The channel must not be closed directly, only the lease; reads should use the positional methods
+ * (e.g. {@link FileChannel#read(java.nio.ByteBuffer, long)}, {@link FileChannel#transferTo}) since the
+ * channel position is shared as well. A channel is only shared while it is open and the path still
+ * refers to the file it was opened on, as identified by its {@link BasicFileAttributes#fileKey() file key}:
+ * once the file is replaced (e.g. renamed over) or the channel closed (e.g. by an interrupted read), the
+ * next lease opens the file anew, the former channel being closed with its own last lease.
+ *
+ * @author dukui
+ * @see ChangedFile#openChannel()
+ */
+public final class SharedFileChannel implements Closeable {
+
+    // Guarded by itself
+    private static final Map<File, Entry> channels = new HashMap<>();
+
+    // Guarded by channels, the evicted entries still leased included
+    private static int openChannels;
+
+    private final File file;
+
+    private final Entry entry;
+
+    private boolean closed;
+
+    private SharedFileChannel(File file, Entry entry) {
+        this.file = file;
+        this.entry = entry;
+    }
+
+    /**
+     * Lease the channel of the given file, opening it if nobody holds it yet.
+     *
+     * @param file the file to read
+     * @return the lease, to be closed once done
+     * @throws IOException if the file cannot be opened
+     */
+    public static SharedFileChannel open(File file) throws IOException {
+        Assert.notNull(file, "File must not be null");
+        File key = file.getAbsoluteFile();
+        Path path = key.toPath();
+        // File system operations run outside the lock, so that a slow open does not hold up other files
+        SharedFileChannel lease = lease(key, fileKey(path));
+        if (lease != null) {
+            return lease;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        Entry opened;
+        try {
+            // Read once opened, a file replaced in between is then opened again by the next lease
+            opened = new Entry(channel, fileKey(path));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        synchronized (channels) {
+            lease = lease(key, opened.fileKey);
+            if (lease == null) {
+                // Evicting the stale entry, if any, closed with its last lease
+                channels.put(key, opened);
+                openChannels++;
+                opened.references++;
+                return new SharedFileChannel(key, opened);
+            }
+        }
+        // Opened concurrently by another lease
+        channel.close();
+        return lease;
+    }
+
+    /**
+     * Lease the channel shared for the given file if it is still open on the file with the given key.
+     */
+    private static SharedFileChannel lease(File file, Object fileKey) {
+        synchronized (channels) {
+            Entry entry = channels.get(file);
+            if (entry == null || !entry.channel.isOpen() || !Objects.equals(entry.fileKey, fileKey)) {
+                return null;
+            }
+            entry.references++;
+            return new SharedFileChannel(file, entry);
+        }
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    public FileChannel getChannel() {
+        Assert.state(!this.closed, "SharedFileChannel is closed");
+        return this.entry.channel;
+    }
+
+    /**
+     * Release the lease, closing the channel if it was the last one.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (channels) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (--this.entry.references > 0) {
+                return;
+            }
+            channels.remove(this.file, this.entry);
+            openChannels--;
+        }
+        this.entry.channel.close();
+    }
+
+    /**
+     * Return the number of channels currently leased, for monitoring purposes.
+     *
+     * @return the open channel count
+     */
+    public static int getOpenChannelCount() {
+        synchronized (channels) {
+            return openChannels;
+        }
+    }
+
+    private static final class Entry {
+
+        private final FileChannel channel;
+
+        // Null if the file system does not provide any, the path being trusted then
+        private final Object fileKey;
+
+        private int references;
+
+        private Entry(FileChannel channel, Object fileKey) {
+            this.channel = channel;
+            this.fileKey = fileKey;
+        }
+    }
+}
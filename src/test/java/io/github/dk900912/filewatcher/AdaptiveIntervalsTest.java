@@ -0,0 +1,58 @@
+package io.github.dk900912.filewatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author dukui
+ */
+public class AdaptiveIntervalsTest {
+
+    @Test
+    public void testPollIntervalBacksOffWhileIdle() {
+        AtomicReference<Duration> pollInterval = new AtomicReference<>(Duration.ofMillis(1000));
+        AdaptiveIntervals intervals = new AdaptiveIntervals(pollInterval, new AtomicReference<>(Duration.ofMillis(400)),
+                Duration.ofMillis(5000), null);
+        assertEquals(1000, intervals.getPollIntervalMillis());
+
+        intervals.onScan(false, 0);
+        assertEquals(2000, intervals.getPollIntervalMillis());
+        intervals.onScan(false, 0);
+        intervals.onScan(false, 0);
+        assertEquals(5000, intervals.getPollIntervalMillis());
+
+        intervals.onScan(true, 0);
+        assertEquals(1000, intervals.getPollIntervalMillis());
+        // The lower bound may change at runtime
+        pollInterval.set(Duration.ofMillis(1500));
+        assertEquals(1500, intervals.getPollIntervalMillis());
+        // Fixed quiet period
+        assertEquals(400, intervals.getQuietPeriodMillis());
+    }
+
+    @Test
+    public void testQuietPeriodFollowsWriteDurations() {
+        AdaptiveIntervals intervals = new AdaptiveIntervals(new AtomicReference<>(Duration.ofMillis(1000)),
+                new AtomicReference<>(Duration.ofMillis(400)), null, Duration.ofMillis(3000));
+
+        intervals.onScan(true, 2);
+        assertEquals(1200, intervals.getQuietPeriodMillis());
+        intervals.onScan(true, 4);
+        assertEquals(3000, intervals.getQuietPeriodMillis());
+        // Unchanged while idle
+        intervals.onScan(false, 0);
+        assertEquals(3000, intervals.getQuietPeriodMillis());
+
+        intervals.onScan(true, 0);
+        assertEquals(1500, intervals.getQuietPeriodMillis());
+        intervals.onScan(true, 0);
+        intervals.onScan(true, 0);
+        assertEquals(400, intervals.getQuietPeriodMillis());
+        // Fixed poll interval
+        assertEquals(1000, intervals.getPollIntervalMillis());
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.filter.SuffixFilter;
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.APPEND;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author dukui
+ */
+public class AppendDetectorTest {
+
+    private Path testRoot;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        testRoot = Files.createTempDirectory("append-detector-test");
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(testRoot)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testAppendsAreToldApartFromRewrites() throws IOException {
+        AppendDetector detector = new AppendDetector(new SuffixFilter(Set.of("log")));
+        Path log = testRoot.resolve("app.log");
+        Path csv = testRoot.resolve("data.csv");
+        String header = "x".repeat(AppendDetector.FINGERPRINT_SIZE * 3) + "\n";
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(testRoot.toFile());
+        Files.writeString(log, header);
+        Files.writeString(csv, header);
+        snapshot = scan(detector, snapshot, null);
+
+        Files.writeString(log, "line 1\n", StandardOpenOption.APPEND);
+        Files.writeString(csv, "line 1\n", StandardOpenOption.APPEND);
+        long length = header.length();
+        snapshot = scan(detector, snapshot, Set.of("app.log:" + APPEND + "[" + length + "," + (length + 7) + ")", "data.csv:" + MODIFY));
+
+        Files.writeString(log, "line 2\n", StandardOpenOption.APPEND);
+        Files.writeString(log, "line 3\n", StandardOpenOption.APPEND);
+        snapshot = scan(detector, snapshot, Set.of("app.log:" + APPEND + "[" + (length + 7) + "," + (length + 21) + ")"));
+
+        // Rewritten tail, then truncation
+        Files.writeString(log, header + "LINE 1\nline 2\nline 3\nline 4\n");
+        snapshot = scan(detector, snapshot, Set.of("app.log:" + MODIFY));
+        Files.writeString(log, header);
+        scan(detector, snapshot, Set.of("app.log:" + MODIFY));
+    }
+
+    private DirectorySnapshot scan(AppendDetector detector, DirectorySnapshot previous, Set<String> expected) {
+        DirectorySnapshot current = new DirectorySnapshot(testRoot.toFile());
+        ChangedFiles changedFiles = detector.classify(previous.getChangedFiles(current, null));
+        if (expected != null) {
+            assertEquals(expected, changedFiles.getFiles().stream().map(AppendDetectorTest::describe).collect(Collectors.toSet()));
+        }
+        return current;
+    }
+
+    private static String describe(ChangedFile changedFile) {
+        String description = changedFile.getRelativeName() + ":" + changedFile.getType();
+        return (changedFile.getType() == APPEND)
+                ? description + "[" + changedFile.getStartOffset() + "," + changedFile.getEndOffset() + ")"
+                : description;
+    }
+}
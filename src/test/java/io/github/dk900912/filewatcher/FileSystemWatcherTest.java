@@ -1,16 +1,32 @@
 package io.github.dk900912.filewatcher;
 
+import io.github.dk900912.filewatcher.listener.FileChangeListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -65,6 +81,226 @@ public class FileSystemWatcherTest {
         assertFalse(watcherThread.isAlive());
     }
 
+    @Test
+    public void testWatchersShareScheduler() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        List<Path> roots = new ArrayList<>();
+        List<FileSystemWatcher> watchers = new ArrayList<>();
+        try {
+            CountDownLatch changed = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                Path root = Files.createTempDirectory("shared-scheduler-test");
+                roots.add(root);
+                FileWatcherProperties properties = new FileWatcherProperties(List.of(root.toString()));
+                properties.setQuietPeriod(Duration.ofMillis(50));
+                properties.setPollInterval(Duration.ofMillis(200));
+                FileSystemWatcher watcher = new FileSystemWatcher(properties, scheduler);
+                watcher.addListener(changeSet -> changed.countDown());
+                watcher.start();
+                watchers.add(watcher);
+                assertNull(TestUtils.getPrivateField(watcher, "watchThread"));
+            }
+
+            for (Path root : roots) {
+                Files.writeString(root.resolve("added.txt"), "added");
+            }
+
+            assertTrue(changed.await(10, TimeUnit.SECONDS));
+        } finally {
+            watchers.forEach(FileSystemWatcher::stop);
+            scheduler.shutdownNow();
+            for (Path root : roots) {
+                delete(root);
+            }
+        }
+    }
+
+    @Test
+    public void testDirectoriesAreScannedOnTheirOwnCadence() throws Exception {
+        Path incoming = Files.createTempDirectory("incoming-test");
+        Path archive = Files.createTempDirectory("archive-test");
+        try {
+            FileWatcherProperties properties = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                    "directories", List.of(incoming.toString(), archive.toString()),
+                    "pollInterval", Duration.ofSeconds(60),
+                    "directorySettings", Map.of(incoming.toString(),
+                            new FileWatcherProperties.DirectorySettings(Duration.ofMillis(200), Duration.ofMillis(50), 1))), null);
+            FileSystemWatcher watcher = new FileSystemWatcher(properties);
+            Set<Path> changed = ConcurrentHashMap.newKeySet();
+            CountDownLatch incomingChanged = new CountDownLatch(1);
+            watcher.addListener(changeSet -> changeSet.forEach(changedFiles -> {
+                changed.add(changedFiles.getDirectory().toPath());
+                incomingChanged.countDown();
+            }));
+            watcher.start();
+
+            Files.writeString(archive.resolve("archived.txt"), "archived");
+            Files.writeString(incoming.resolve("incoming.txt"), "incoming");
+
+            assertTrue(incomingChanged.await(10, TimeUnit.SECONDS));
+            watcher.stop();
+            // Not scanned again within a minute
+            assertEquals(Set.of(incoming), changed);
+        } finally {
+            delete(incoming);
+            delete(archive);
+        }
+    }
+
+    @Test
+    public void testFirstScanIsDelayedByPhaseOffset() throws Exception {
+        Path root = Files.createTempDirectory("phase-offset-test");
+        try {
+            FileWatcherProperties properties = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                    "directories", List.of(root.toString()),
+                    "pollInterval", Duration.ofMillis(200),
+                    "quietPeriod", Duration.ofMillis(50),
+                    "phaseOffset", Duration.ofMillis(1500),
+                    "jitter", Duration.ofMillis(100)), null);
+            FileSystemWatcher watcher = new FileSystemWatcher(properties);
+            CountDownLatch changed = new CountDownLatch(1);
+            watcher.addListener(changeSet -> changed.countDown());
+            watcher.start();
+
+            Files.writeString(root.resolve("added.txt"), "added");
+
+            assertFalse(changed.await(700, TimeUnit.MILLISECONDS));
+            assertTrue(changed.await(10, TimeUnit.SECONDS));
+            watcher.stop();
+        } finally {
+            delete(root);
+        }
+    }
+
+    @Test
+    public void testDirectoriesAndListenersChangeWhileRunning() throws Exception {
+        Path initial = Files.createTempDirectory("initial-test");
+        Path added = Files.createTempDirectory("added-test");
+        try {
+            // Settings of a directory not watched yet
+            FileWatcherProperties properties = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                    "directories", List.of(initial.toString()),
+                    "pollInterval", Duration.ofMillis(200),
+                    "quietPeriod", Duration.ofMillis(50),
+                    "directorySettings", Map.of(added.toString(),
+                            new FileWatcherProperties.DirectorySettings(Duration.ofMillis(300), Duration.ofMillis(50), 1))), null);
+            FileSystemWatcher watcher = new FileSystemWatcher(properties);
+            watcher.start();
+
+            Set<Path> changed = ConcurrentHashMap.newKeySet();
+            CountDownLatch addedChanged = new CountDownLatch(1);
+            FileChangeListener listener = changeSet -> changeSet.forEach(changedFiles -> {
+                changed.add(changedFiles.getDirectory().toPath());
+                if (changedFiles.getDirectory().toPath().equals(added)) {
+                    addedChanged.countDown();
+                }
+            });
+            watcher.addListener(listener);
+            // Files written before the baseline snapshot would be part of it
+            watcher.addDirectory(added.toFile()).get(10, TimeUnit.SECONDS);
+            Files.writeString(added.resolve("added.txt"), "added");
+
+            assertTrue(addedChanged.await(10, TimeUnit.SECONDS));
+            assertTrue(watcher.removeDirectory(added.toFile()));
+            assertFalse(watcher.removeDirectory(added.toFile()));
+            assertThrows(IllegalStateException.class, () -> watcher.removeDirectory(initial.toFile()));
+            assertTrue(watcher.removeListener(listener));
+            assertFalse(watcher.removeListener(listener));
+            watcher.stop();
+            assertEquals(Set.of(added), changed);
+        } finally {
+            delete(initial);
+            delete(added);
+        }
+    }
+
+    @Test
+    public void testFailedScanTerminatesTheWatcher() throws Exception {
+        Path root = Files.createTempDirectory("failed-scan-test");
+        Path added = Files.createTempDirectory("failed-scan-added-test");
+        try {
+            FileWatcherProperties properties = new FileWatcherProperties(List.of(root.toString()));
+            properties.setQuietPeriod(Duration.ofMillis(50));
+            properties.setPollInterval(Duration.ofMillis(200));
+            FileSystemWatcher watcher = new FileSystemWatcher(properties);
+            watcher.replaceFileFilter(file -> {
+                throw new IllegalStateException("Broken filter");
+            });
+            watcher.start();
+            Thread watcherThread = (Thread) TestUtils.getPrivateField(watcher, "watchThread");
+
+            Files.writeString(root.resolve("added.txt"), "added");
+            watcherThread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(watcherThread.isAlive());
+            // Discarded rather than queued forever
+            CompletableFuture<Void> joined = watcher.addDirectory(added.toFile());
+            assertThrows(CancellationException.class, () -> joined.get(10, TimeUnit.SECONDS));
+            watcher.stop();
+        } finally {
+            delete(root);
+            delete(added);
+        }
+    }
+
+    @Test
+    public void testAsyncListenerBacklogIsObservable() throws Exception {
+        Path root = Files.createTempDirectory("async-backlog-test");
+        try {
+            FileWatcherProperties properties = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                    "directories", List.of(root.toString()),
+                    "pollInterval", Duration.ofMillis(200),
+                    "quietPeriod", Duration.ofMillis(50),
+                    "asyncListeners", true), null);
+            FileSystemWatcher watcher = new FileSystemWatcher(properties);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            FileChangeListener listener = changeSet -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            watcher.addListener(listener);
+            assertEquals(0, watcher.getQueueDepth(listener));
+            watcher.start();
+
+            // Being delivered
+            Files.writeString(root.resolve("first.txt"), "first");
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            // Queued
+            Files.writeString(root.resolve("second.txt"), "second");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (watcher.getQueueDepth(listener) == 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            assertEquals(1, watcher.getQueueDepth(listener));
+            assertEquals(0, watcher.getCoalescedFileCount(listener));
+            assertTrue(watcher.getLag(listener).toNanos() > 0);
+            assertEquals(Duration.ZERO, watcher.getLag(changeSet -> {/* Not registered */}));
+
+            release.countDown();
+            watcher.stop();
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> pathStream = Files.walk(root)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
     public static class TestUtils {
         public static Object getPrivateField(Object instance, String fieldName) throws Exception {
             Field field = instance.getClass().getDeclaredField(fieldName);
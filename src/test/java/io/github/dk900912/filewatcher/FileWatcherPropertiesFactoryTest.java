@@ -132,6 +132,49 @@ public class FileWatcherPropertiesFactoryTest {
         assertNull(FileWatcherPropertiesFactory.createFromMap(properties, mockConverter));
     }
 
+    @Test
+    public void testCreateFromMapWithOptionGroups() {
+        Path validDir6 = testRoot.resolve("dir6");
+
+        try {
+            Files.createDirectory(validDir6);
+        } catch (IOException e) {
+            fail("Failed to create test directory: " + e.getMessage());
+        }
+
+        // Given as a group
+        FileWatcherProperties grouped = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                "directories", List.of(validDir6.toString()),
+                "dispatchSettings", new FileWatcherProperties.DispatchSettings(true, 8, null)), null);
+        assertNotNull(grouped);
+        assertEquals(true, grouped.getAsyncListeners());
+        assertEquals(8, grouped.getListenerQueueCapacity());
+        assertEquals(10_000, grouped.getSubscriberBufferLimit());
+
+        // Given without their groups
+        FileWatcherProperties flattened = FileWatcherPropertiesFactory.createFromMap(Map.of(
+                "directories", List.of(validDir6.toString()),
+                "listener-queue-capacity", 8,
+                "detect_moves", true,
+                "scanTimeout", 5000L), (sourceType, targetType, value) -> {
+            if (value instanceof Long && targetType == Duration.class) {
+                return Duration.ofMillis((Long) value);
+            }
+            return value;
+        });
+        assertNotNull(flattened);
+        assertEquals(false, flattened.getAsyncListeners());
+        assertEquals(8, flattened.getListenerQueueCapacity());
+        assertEquals(true, flattened.getDetectMoves());
+        assertEquals(Duration.ofMillis(5000), flattened.getScanTimeout());
+        assertNull(flattened.getIoBudget());
+
+        // Still validated
+        assertNull(FileWatcherPropertiesFactory.createFromMap(Map.of(
+                "directories", List.of(validDir6.toString()),
+                "listenerQueueCapacity", 0), null));
+    }
+
 
 
     @Test
@@ -0,0 +1,91 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.filter.GlobFilter;
+import io.github.dk900912.filewatcher.filter.PrefixFilter;
+import io.github.dk900912.filewatcher.filter.SuffixFilter;
+import io.github.dk900912.filewatcher.listener.FileChangeListener;
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class ListenerRouterTest {
+
+    private static final File ROOT = new File("/data").getAbsoluteFile();
+
+    @Test
+    public void testEachListenerReceivesOnlyWhatItAccepts() {
+        RecordingListener all = new RecordingListener();
+        RecordingListener images = new RecordingListener();
+        RecordingListener reports = new RecordingListener();
+        RecordingListener csv = new RecordingListener();
+        RecordingListener none = new RecordingListener();
+        ListenerRouter router = new ListenerRouter(List.of(
+                new ListenerRouter.Route(all, null),
+                new ListenerRouter.Route(images, new SuffixFilter(Set.of("png", ".JPG"))),
+                new ListenerRouter.Route(reports, new PrefixFilter(Set.of(new File(ROOT, "reports").getPath()))),
+                new ListenerRouter.Route(csv, new GlobFilter(Set.of("*.csv"))),
+                new ListenerRouter.Route(none, new SuffixFilter(Set.of("exe")))));
+
+        Set<ChangedFiles> changeSet = changeSet("a.png", "reports/2024/b.csv", "reports/c.JPG", "d.txt");
+        router.dispatch(changeSet);
+
+        assertEquals(List.of(changeSet), all.received);
+        assertEquals(Set.of("a.png", "c.JPG"), images.names());
+        assertEquals(Set.of("b.csv", "c.JPG"), reports.names());
+        assertEquals(Set.of("b.csv"), csv.names());
+        assertTrue(none.received.isEmpty());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStarveOthers() {
+        RecordingListener last = new RecordingListener();
+        ListenerRouter router = new ListenerRouter(List.of(
+                new ListenerRouter.Route(changeSet -> {
+                    throw new IllegalStateException("Expected");
+                }, new SuffixFilter(Set.of("txt"))),
+                new ListenerRouter.Route(last, new SuffixFilter(Set.of("txt")))));
+
+        router.dispatch(changeSet("a.txt"));
+
+        assertEquals(Set.of("a.txt"), last.names());
+    }
+
+    private static Set<ChangedFiles> changeSet(String... names) {
+        Set<ChangedFile> files = new LinkedHashSet<>();
+        for (String name : names) {
+            files.add(new ChangedFile(ROOT, new File(ROOT, name), ChangedFile.Type.ADD));
+        }
+        return Set.of(new ChangedFiles(ROOT, files));
+    }
+
+    private static class RecordingListener implements FileChangeListener {
+
+        private final List<Set<ChangedFiles>> received = new ArrayList<>();
+
+        @Override
+        public void onChange(Set<ChangedFiles> changeSet) {
+            this.received.add(changeSet);
+        }
+
+        private Set<String> names() {
+            assertEquals(1, this.received.size());
+            return this.received.getFirst().stream()
+                    .flatMap(changedFiles -> changedFiles.getFiles().stream())
+                    .map(changedFile -> changedFile.getFile().getName())
+                    .collect(Collectors.toSet());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.dk900912.filewatcher;
 
+import io.github.dk900912.filewatcher.codec.DeflateSnapshotCodec;
 import io.github.dk900912.filewatcher.model.DirectorySnapshot;
 import io.github.dk900912.filewatcher.model.FileSnapshot;
 import io.github.dk900912.filewatcher.utils.Assert;
@@ -9,12 +10,17 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * @author dukui
@@ -97,6 +103,76 @@ public class LocalSnapshotStateRepositoryTest {
         compareSnapshotMaps(modified, restored);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCorruptedSectionIsDroppedAlone() throws IOException {
+        Map<File, DirectorySnapshot> original = createSnapshotMap();
+        repository.save(original);
+
+        SnapshotFile.Section corrupted;
+        try (SnapshotFile snapshotFile = SnapshotFile.open(testRoot.resolve("state.ser"))) {
+            corrupted = snapshotFile.getSections().get(1);
+        }
+        try (FileChannel channel = FileChannel.open(testRoot.resolve("state.ser"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x7F, 0x7F, 0x7F}), corrupted.offset() + corrupted.length() / 2);
+        }
+        Map<File, DirectorySnapshot> restored = (Map<File, DirectorySnapshot>) repository.restore();
+
+        Assert.notNull(restored, "Restored snapshots must not be null");
+        Assert.isTrue(restored.size() == original.size() - 1, "Only the corrupted section must be dropped");
+        Assert.isTrue(!restored.containsKey(corrupted.directory()), "Corrupted section must be dropped");
+        original.remove(corrupted.directory());
+        compareSnapshotMaps(original, restored);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompressedSaveAndRestore() throws IOException {
+        Map<File, DirectorySnapshot> original = createSnapshotMap();
+        Path compressedStorage = testRoot.resolve("compressed.ser");
+        new LocalSnapshotStateRepository(compressedStorage, new DeflateSnapshotCodec(Deflater.BEST_SPEED)).save(original);
+        try (SnapshotFile snapshotFile = SnapshotFile.open(compressedStorage)) {
+            Assert.isTrue(snapshotFile.getSections().size() == original.size(), "Section count mismatch");
+        }
+
+        // The codec is read back from the file, whatever the repository is configured with
+        Map<File, DirectorySnapshot> restored =
+                (Map<File, DirectorySnapshot>) new LocalSnapshotStateRepository(compressedStorage).restore();
+
+        compareSnapshotMaps(original, restored);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLegacySnapshotIsRestored() throws IOException {
+        Map<File, DirectorySnapshot> original = createSnapshotMap();
+        Path legacyStorage = testRoot.resolve("legacy.ser");
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(legacyStorage))) {
+            oos.writeUTF("1.0");
+            oos.writeInt(original.size());
+            for (DirectorySnapshot snapshot : original.values()) {
+                oos.writeUTF(snapshot.getDirectory().getAbsolutePath());
+                oos.writeObject(snapshot.getTime());
+                oos.writeInt(snapshot.getFiles().size());
+                for (FileSnapshot file : snapshot.getFiles()) {
+                    oos.writeUTF(file.getFile().getAbsolutePath());
+                    oos.writeBoolean(file.exists());
+                    oos.writeLong(file.getLength());
+                    oos.writeLong(file.getLastModified());
+                }
+            }
+        }
+        Map<File, DirectorySnapshot> restored =
+                (Map<File, DirectorySnapshot>) new LocalSnapshotStateRepository(legacyStorage).restore();
+
+        Assert.notNull(restored, "Restored snapshots must not be null");
+        Assert.isTrue(restored.size() == original.size(), "Map size mismatch");
+        restored.forEach((dir, snapshot) -> {
+            Assert.isTrue(snapshot.getFiles().equals(original.get(dir).getFiles()), "File mismatch in " + dir);
+            Assert.isTrue(snapshot.getDirectoryTimes().isEmpty(), "Legacy snapshot has no directory times");
+        });
+    }
+
     private void compareSnapshotMaps(Map<File, DirectorySnapshot> expected, Map<File, DirectorySnapshot> actual) {
         Assert.isTrue(expected.size() == actual.size(), "Map size mismatch");
 
@@ -109,6 +185,9 @@ public class LocalSnapshotStateRepositoryTest {
             Assert.isTrue(expectedSnapshot.getTime().equals(actualSnapshot.getTime()),
                     "Snapshot time mismatch");
 
+            Assert.isTrue(expectedSnapshot.getDirectoryTimes().equals(actualSnapshot.getDirectoryTimes()),
+                    "Directory times mismatch in " + dir);
+
             Set<FileSnapshot> expectedFiles = expectedSnapshot.getFiles();
             Set<FileSnapshot> actualFiles = actualSnapshot.getFiles();
             Assert.isTrue(expectedFiles.size() == actualFiles.size(),
@@ -0,0 +1,102 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author dukui
+ */
+public class SharedScanEngineTest {
+
+    private Path root;
+
+    private final AtomicInteger walks = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("shared-scan-engine-test");
+        Files.createDirectories(root.resolve("in"));
+        Files.writeString(root.resolve("in/batch.csv"), "batch");
+        Files.writeString(root.resolve("report.txt"), "report");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(root)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testRecentSnapshotsAreShared() {
+        SharedScanEngine engine = new SharedScanEngine();
+        File directory = root.toFile();
+        File nested = root.resolve("in").toFile();
+        engine.register(directory);
+        engine.register(nested);
+
+        DirectorySnapshot first = engine.snapshot(directory, Duration.ofSeconds(60), null, () -> walk(directory));
+        DirectorySnapshot second = engine.snapshot(directory, Duration.ofSeconds(60), null, () -> walk(directory));
+        DirectorySnapshot subtree = engine.snapshot(nested, Duration.ofSeconds(60), null, () -> walk(nested));
+
+        assertEquals(1, walks.get());
+        assertSame(first, second);
+        assertEquals(nested, subtree.getDirectory());
+        assertEquals(Set.of(root.resolve("in/batch.csv").toFile()), files(subtree));
+        assertEquals(Set.of(nested), subtree.getDirectoryTimes().keySet());
+    }
+
+    @Test
+    public void testStaleOrUnregisteredSnapshotsAreWalkedAgain() throws InterruptedException {
+        SharedScanEngine engine = new SharedScanEngine();
+        File directory = root.toFile();
+
+        engine.snapshot(directory, Duration.ofSeconds(60), null, () -> walk(directory));
+        engine.snapshot(directory, Duration.ofSeconds(60), null, () -> walk(directory));
+        assertEquals(2, walks.get());
+
+        engine.register(directory);
+        engine.snapshot(directory, Duration.ofMillis(10), null, () -> walk(directory));
+        TimeUnit.MILLISECONDS.sleep(50);
+        engine.snapshot(directory, Duration.ofMillis(10), null, () -> walk(directory));
+        assertEquals(4, walks.get());
+
+        engine.unregister(directory);
+        engine.snapshot(directory, Duration.ofSeconds(60), null, () -> walk(directory));
+        assertEquals(5, walks.get());
+    }
+
+    private DirectorySnapshot walk(File directory) {
+        walks.incrementAndGet();
+        return new DirectorySnapshot(directory);
+    }
+
+    private static Set<File> files(DirectorySnapshot snapshot) {
+        return snapshot.getFiles().stream().map(FileSnapshot::getFile).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.codec.DeflateSnapshotCodec;
+import io.github.dk900912.filewatcher.codec.SnapshotCodec;
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.model.FileSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Measures the CPU/I-O tradeoff of the snapshot codecs on a synthetic tree: for every codec it reports
+ * the file size and the save/restore times (from the page cache, i.e. mostly CPU), and estimates the
+ * restore time on a disk of the given throughput, where reading fewer bytes may outweigh inflating them.
+ *
+ * <p>Not a unit test; run it manually, e.g. {@code java -cp <test classpath>
+ * io.github.dk900912.filewatcher.SnapshotCompressionBenchmark [files] [disk MB/s]}.
+ *
+ * @author dukui
+ */
+public class SnapshotCompressionBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = (args.length > 0) ? Integer.parseInt(args[0]) : 500_000;
+        double diskMegabytesPerSecond = (args.length > 1) ? Double.parseDouble(args[1]) : 100;
+
+        Path workspace = Files.createTempDirectory("snapshot-compression-benchmark");
+        try {
+            Map<File, DirectorySnapshot> snapshots = createSnapshots(workspace, fileCount);
+            List<SnapshotCodec> codecs = List.of(
+                    SnapshotCodec.NONE,
+                    new DeflateSnapshotCodec(Deflater.BEST_SPEED),
+                    new DeflateSnapshotCodec(Deflater.DEFAULT_COMPRESSION),
+                    new DeflateSnapshotCodec(Deflater.BEST_COMPRESSION));
+
+            System.out.printf("%d files, disk at %.0f MB/s%n", fileCount, diskMegabytesPerSecond);
+            System.out.printf("%-20s %12s %10s %12s %16s%n", "codec", "size (MB)", "save (ms)", "restore (ms)", "on disk (ms)");
+            for (SnapshotCodec codec : codecs) {
+                Path storage = workspace.resolve("state.ser");
+                LocalSnapshotStateRepository repository = new LocalSnapshotStateRepository(storage, codec);
+                long saveNanos = Long.MAX_VALUE;
+                long restoreNanos = Long.MAX_VALUE;
+                // Keep the best round, the first ones mostly warm up the JIT
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    repository.save(snapshots);
+                    saveNanos = Math.min(saveNanos, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    repository.restore();
+                    restoreNanos = Math.min(restoreNanos, System.nanoTime() - start);
+                }
+                double megabytes = Files.size(storage) / (1024.0 * 1024.0);
+                double restoreMillis = restoreNanos / 1_000_000.0;
+                System.out.printf("%-20s %12.2f %10.1f %12.1f %16.1f%n", codec, megabytes, saveNanos / 1_000_000.0,
+                        restoreMillis, restoreMillis + megabytes / diskMegabytesPerSecond * 1000);
+            }
+        } finally {
+            try (var paths = Files.walk(workspace)) {
+                paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Snapshots of files that do not exist on disk, with realistic, repetitive paths.
+     */
+    private static Map<File, DirectorySnapshot> createSnapshots(Path workspace, int fileCount) {
+        Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
+        int roots = 4;
+        long now = System.currentTimeMillis();
+        for (int r = 0; r < roots; r++) {
+            File root = workspace.resolve("root" + r).toFile();
+            Set<FileSnapshot> files = new LinkedHashSet<>();
+            Map<File, Long> directoryTimes = new LinkedHashMap<>();
+            for (int i = r; i < fileCount; i += roots) {
+                File directory = new File(root, "project-" + (i / 1000) + "/module-" + (i / 100 % 10) + "/src");
+                directoryTimes.putIfAbsent(directory, now - i);
+                files.add(new FileSnapshot(new File(directory, "SourceFile" + i + ".java"), true,
+                        1024 + (i * 31L) % 65536, now - (i * 7L) % 86_400_000));
+            }
+            snapshots.put(root, new DirectorySnapshot(root, LocalDateTime.now(), files, directoryTimes));
+        }
+        return snapshots;
+    }
+}
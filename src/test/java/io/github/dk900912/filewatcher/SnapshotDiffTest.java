@@ -0,0 +1,103 @@
+package io.github.dk900912.filewatcher;
+
+import io.github.dk900912.filewatcher.codec.DeflateSnapshotCodec;
+import io.github.dk900912.filewatcher.codec.SnapshotCodec;
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * @author dukui
+ */
+public class SnapshotDiffTest {
+
+    private Path testRoot;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        testRoot = Files.createTempDirectory("snapshot-diff-test");
+        for (int i = 0; i < 2; i++) {
+            Path dir = Files.createDirectories(testRoot.resolve("root" + i).resolve("sub"));
+            for (int j = 0; j < 5; j++) {
+                Files.writeString(dir.resolve("file" + j + ".txt"), "content" + j);
+            }
+        }
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(testRoot)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testDiffMatchesChangedFiles() throws IOException {
+        File root0 = testRoot.resolve("root0").toFile();
+        File root1 = testRoot.resolve("root1").toFile();
+        Map<File, DirectorySnapshot> previous = snapshot(root0, root1);
+        SnapshotFile.write(testRoot.resolve("previous.ser"), previous, SnapshotCodec.NONE);
+
+        Path sub = testRoot.resolve("root0/sub");
+        Files.writeString(sub.resolve("file1.txt"), "modified content");
+        Files.delete(sub.resolve("file2.txt"));
+        Files.writeString(sub.resolve("file9.txt"), "new");
+        Files.writeString(sub.resolve("a.txt"), "new");
+        Path root2 = Files.createDirectories(testRoot.resolve("root2"));
+        Files.writeString(root2.resolve("only.txt"), "new");
+        // root1 is no longer part of the current snapshot
+        Map<File, DirectorySnapshot> current = snapshot(root0, root2.toFile());
+        SnapshotFile.write(testRoot.resolve("current.ser"), current, new DeflateSnapshotCodec());
+
+        Set<ChangedFile> expected = new HashSet<>();
+        expected.addAll(previous.get(root0).getChangedFiles(current.get(root0), null).getFiles());
+        previous.get(root1).getFiles().forEach(file -> expected.add(new ChangedFile(root1, file.getFile(), ChangedFile.Type.DELETE)));
+        expected.add(new ChangedFile(root2.toFile(), root2.resolve("only.txt").toFile(), ChangedFile.Type.ADD));
+
+        Set<ChangedFile> actual = new HashSet<>();
+        SnapshotDiff.diff(testRoot.resolve("previous.ser"), testRoot.resolve("current.ser"), null,
+                changedFile -> Assert.isTrue(actual.add(changedFile), "Duplicated change " + changedFile));
+
+        Assert.isTrue(expected.size() == 4 + 5 + 1, "Unexpected number of changes " + expected);
+        Assert.isTrue(expected.equals(actual), "Expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    public void testIdenticalSnapshotsHaveNoChanges() throws IOException {
+        Map<File, DirectorySnapshot> snapshots = snapshot(testRoot.resolve("root0").toFile(), testRoot.resolve("root1").toFile());
+        SnapshotFile.write(testRoot.resolve("previous.ser"), snapshots, SnapshotCodec.NONE);
+        SnapshotFile.write(testRoot.resolve("current.ser"), snapshots, new DeflateSnapshotCodec());
+
+        SnapshotDiff.diff(testRoot.resolve("previous.ser"), testRoot.resolve("current.ser"), null,
+                changedFile -> Assert.state(false, "Unexpected change " + changedFile));
+    }
+
+    private static Map<File, DirectorySnapshot> snapshot(File... roots) {
+        Map<File, DirectorySnapshot> snapshots = new LinkedHashMap<>();
+        for (File root : roots) {
+            snapshots.put(root, new DirectorySnapshot(root));
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.dk900912.filewatcher.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class GlobFilterTest {
+
+    private GlobFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        filter = new GlobFilter(Set.of("*.{png,jpg}", "/data/**/reports/*.csv"));
+    }
+
+    @Test
+    public void accept_NameGlob_MatchesFileName() {
+        assertTrue(filter.accept(new File("/anywhere/a.png")));
+        assertTrue(filter.accept(new File("b.jpg")));
+        assertFalse(filter.accept(new File("/anywhere/a.gif")));
+    }
+
+    @Test
+    public void accept_PathGlob_MatchesAbsolutePath() {
+        assertTrue(filter.accept(new File("/data/2024/01/reports/sales.csv")));
+        assertFalse(filter.accept(new File("/data/2024/01/sales.csv")));
+        assertFalse(filter.accept(new File("/other/reports/sales.csv")));
+    }
+
+    @Test
+    public void constructor_EmptyGlobs_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new GlobFilter(Set.of()));
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.dk900912.filewatcher.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class PrefixFilterTest {
+
+    private PrefixFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        filter = new PrefixFilter(Set.of("/data/images/", "relative/dir"));
+    }
+
+    @Test
+    public void accept_FileInSubtree_ReturnsTrue() {
+        assertTrue(filter.accept(new File("/data/images/a.png")));
+        assertTrue(filter.accept(new File("/data/images/2024/01/a.png")));
+        assertTrue(filter.accept(new File("/data/other/../images/a.png")));
+    }
+
+    @Test
+    public void accept_SiblingWithSameNamePrefix_ReturnsFalse() {
+        assertFalse(filter.accept(new File("/data/images-old/a.png")));
+        assertFalse(filter.accept(new File("/data/a.png")));
+    }
+
+    @Test
+    public void accept_RelativePrefix_ResolvedAgainstWorkingDirectory() {
+        assertTrue(filter.accept(new File("relative/dir/a.txt").getAbsoluteFile()));
+    }
+
+    @Test
+    public void constructor_EmptyPrefixes_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PrefixFilter(Set.of()));
+    }
+}
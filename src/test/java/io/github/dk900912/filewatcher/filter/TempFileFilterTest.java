@@ -0,0 +1,87 @@
+package io.github.dk900912.filewatcher.filter;
+
+import io.github.dk900912.filewatcher.model.DirectorySnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class TempFileFilterTest {
+
+    private static final Set<String> PATTERNS = Set.of("*.tmp", ".*.swp", "*~");
+
+    private Path testRoot;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        testRoot = Files.createTempDirectory("temp-file-filter-test");
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(testRoot)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void accept_TemporaryFiles_AreRejected() {
+        TempFileFilter filter = new TempFileFilter(new SuffixFilter(Set.of("txt", "tmp")), PATTERNS);
+
+        assertTrue(filter.accept(new File("/data/foo.txt")));
+        assertFalse(filter.accept(new File("/data/foo.txt.tmp")));
+        assertFalse(filter.accept(new File("/data/.foo.txt.swp")));
+        assertFalse(filter.accept(new File("/data/foo.txt~")));
+        assertFalse(filter.accept(new File("/data/foo.csv")));
+        assertTrue(new TempFileFilter(null, PATTERNS).accept(new File("/data/foo.csv")));
+    }
+
+    @Test
+    public void testAtomicSavesAreReportedOnce() throws IOException {
+        TempFileFilter filter = new TempFileFilter(null, PATTERNS);
+        Files.writeString(testRoot.resolve("foo"), "old");
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+
+        // Temporary file written by one scan, renamed over the final path by the next one
+        Files.writeString(testRoot.resolve("foo.tmp"), "new content");
+        Files.writeString(testRoot.resolve("bar.tmp"), "bar");
+        DirectorySnapshot first = new DirectorySnapshot(testRoot.toFile());
+        assertEquals(Set.of(), describe(baseline, first, filter));
+
+        Files.move(testRoot.resolve("foo.tmp"), testRoot.resolve("foo"), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(testRoot.resolve("bar.tmp"), testRoot.resolve("bar"));
+        DirectorySnapshot second = new DirectorySnapshot(testRoot.toFile());
+        assertEquals(Set.of("foo:" + MODIFY, "bar:" + ADD), describe(first, second, filter));
+    }
+
+    private static Set<String> describe(DirectorySnapshot previous, DirectorySnapshot current, TempFileFilter filter) {
+        return previous.getChangedFiles(current, filter, true).getFiles().stream()
+                .map(changedFile -> changedFile.getRelativeName() + ":" + changedFile.getType())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.dk900912.filewatcher.listener;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class AsyncFileChangeListenerTest {
+
+    private static final File DIRECTORY = new File("watched");
+
+    @Test
+    public void testDeliversOnAnotherThreadInOrder() throws Exception {
+        List<Set<ChangedFiles>> delivered = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        try (AsyncFileChangeListener listener = new AsyncFileChangeListener(changeSet -> {
+            threads.add(Thread.currentThread());
+            delivered.add(changeSet);
+            latch.countDown();
+            throw new IllegalStateException("A failing listener must not stop the dispatch");
+        }, 8)) {
+            for (int i = 0; i < 3; i++) {
+                listener.onChange(changeSet(Map.of("file" + i, ADD)));
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(changeSet(Map.of("file" + i, ADD)), delivered.get(i));
+            assertNotSame(Thread.currentThread(), threads.get(i));
+        }
+    }
+
+    @Test
+    public void testCoalescesByPathWhenQueueIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Set<ChangedFiles>> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        try (AsyncFileChangeListener listener = new AsyncFileChangeListener(changeSet -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(changeSet);
+            done.countDown();
+        }, 1)) {
+            // Being delivered
+            listener.onChange(changeSet(Map.of("a", ADD)));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            // Queued
+            listener.onChange(changeSet(Map.of("b", MODIFY)));
+            // Coalesced
+            listener.onChange(changeSet(Map.of("c", ADD, "d", ADD, "e", DELETE, "f", MODIFY)));
+            listener.onChange(changeSet(Map.of("c", MODIFY, "d", DELETE, "e", ADD, "f", DELETE)));
+            assertEquals(2, listener.getQueueDepth());
+            assertEquals(3, listener.getCoalescedFileCount());
+            assertTrue(listener.getLag().toNanos() > 0);
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(3, delivered.size());
+        assertEquals(changeSet(Map.of("b", MODIFY)), delivered.get(1));
+        assertEquals(Map.of("c", ADD, "e", MODIFY, "f", DELETE), types(delivered.get(2)));
+    }
+
+    private static Set<ChangedFiles> changeSet(Map<String, ChangedFile.Type> changes) {
+        Set<ChangedFile> files = changes.entrySet().stream()
+                .map(entry -> new ChangedFile(DIRECTORY, new File(DIRECTORY, entry.getKey()), entry.getValue()))
+                .collect(Collectors.toSet());
+        return Set.of(new ChangedFiles(DIRECTORY, files));
+    }
+
+    private static Map<String, ChangedFile.Type> types(Set<ChangedFiles> changeSet) {
+        return changeSet.stream()
+                .flatMap(changedFiles -> changedFiles.getFiles().stream())
+                .collect(Collectors.toMap(changedFile -> changedFile.getFile().getName(), ChangedFile::getType));
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.dk900912.filewatcher.listener;
+
+import io.github.dk900912.filewatcher.model.ChangedFile;
+import io.github.dk900912.filewatcher.model.ChangedFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class FileChangePublisherTest {
+
+    private static final File DIRECTORY = new File("watched");
+
+    @Test
+    public void testHonoursDemandAndCoalesces() throws Exception {
+        // Signal on the calling thread to keep the test deterministic
+        FileChangePublisher publisher = new FileChangePublisher(Runnable::run, 100);
+        RecordingSubscriber<ChangedFile> subscriber = new RecordingSubscriber<>();
+        publisher.files().subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        publisher.onChange(changeSet(change("a", ADD), change("b", ADD)));
+        assertEquals(List.of(change("a", ADD)), subscriber.items);
+
+        // Not requested yet, hence coalesced with the pending ADD of b
+        publisher.onChange(changeSet(change("b", MODIFY), change("c", DELETE)));
+        publisher.onChange(changeSet(change("c", ADD)));
+        assertEquals(1, subscriber.items.size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(List.of(change("a", ADD), change("b", ADD), change("c", MODIFY)), subscriber.items);
+    }
+
+    @Test
+    public void testSlowSubscriberFailsAloneOnceBufferLimitIsExceeded() throws Exception {
+        FileChangePublisher publisher = new FileChangePublisher(3);
+        RecordingSubscriber<Set<ChangedFiles>> slow = new RecordingSubscriber<>();
+        RecordingSubscriber<Set<ChangedFiles>> fast = new RecordingSubscriber<>();
+        publisher.changeSets().subscribe(slow);
+        publisher.changeSets().subscribe(fast);
+        fast.subscribed.get(5, TimeUnit.SECONDS).request(Long.MAX_VALUE);
+        slow.subscribed.get(5, TimeUnit.SECONDS);
+
+        publisher.onChange(changeSet(change("a", ADD), change("b", ADD), change("c", ADD)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fast.items.isEmpty() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        publisher.onChange(changeSet(change("d", ADD)));
+
+        assertInstanceOf(IllegalStateException.class, slow.error.get(5, TimeUnit.SECONDS));
+        deadline = System.currentTimeMillis() + 5000;
+        while (fast.items.size() < 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(List.of(changeSet(change("a", ADD), change("b", ADD), change("c", ADD)), changeSet(change("d", ADD))),
+                fast.items);
+        assertTrue(slow.items.isEmpty());
+        assertEquals(1, publisher.getSubscriptionCount());
+    }
+
+    @Test
+    public void testCoalescesMoves() {
+        FileChangePublisher publisher = new FileChangePublisher(Runnable::run, 100);
+        RecordingSubscriber<Set<ChangedFiles>> subscriber = new RecordingSubscriber<>();
+        publisher.changeSets().subscribe(subscriber);
+
+        // a moved to b then to c is a single move, the added d moved to e an addition of e
+        publisher.onChange(changeSet(move("b", "a"), change("d", ADD)));
+        publisher.onChange(changeSet(move("c", "b"), move("e", "d")));
+        // f moved to g then modified is no longer a move
+        publisher.onChange(changeSet(move("g", "f")));
+        publisher.onChange(changeSet(change("g", MODIFY)));
+
+        subscriber.subscription.request(1);
+        assertEquals(List.of(changeSet(move("c", "a"), change("e", ADD), change("f", DELETE), change("g", ADD))),
+                subscriber.items);
+    }
+
+    private static ChangedFile move(String name, String previousName) {
+        return new ChangedFile(DIRECTORY, new File(DIRECTORY, name), new File(DIRECTORY, previousName));
+    }
+
+    private static ChangedFile change(String name, ChangedFile.Type type) {
+        return new ChangedFile(DIRECTORY, new File(DIRECTORY, name), type);
+    }
+
+    private static Set<ChangedFiles> changeSet(ChangedFile... files) {
+        return Set.of(new ChangedFiles(DIRECTORY, new LinkedHashSet<>(List.of(files))));
+    }
+
+    private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+        private final List<T> items = new CopyOnWriteArrayList<>();
+
+        private final CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+
+        private final CompletableFuture<Throwable> error = new CompletableFuture<>();
+
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.subscribed.complete(subscription);
+        }
+
+        @Override
+        public void onNext(T item) {
+            assertTrue(this.subscription != null);
+            this.items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error.complete(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
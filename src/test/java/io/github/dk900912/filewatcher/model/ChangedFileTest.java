@@ -0,0 +1,109 @@
+package io.github.dk900912.filewatcher.model;
+
+import io.github.dk900912.filewatcher.utils.Assert;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.APPEND;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class ChangedFileTest {
+
+    private static File testFile;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        testFile = Files.createTempFile("ChangedFileTest", ".log").toFile();
+    }
+
+    @AfterAll
+    public static void cleanup() {
+        if (testFile != null && testFile.exists()) {
+            Assert.isTrue(testFile.delete(), "Failed to delete test file");
+        }
+    }
+
+    @Test
+    public void testChangedRegionIsMappedAndTransferred() throws IOException {
+        Files.writeString(testFile.toPath(), "header\n");
+        FileSnapshot previous = new FileSnapshot(testFile);
+        Files.writeString(testFile.toPath(), "line 1\n", StandardOpenOption.APPEND);
+        FileSnapshot current = new FileSnapshot(testFile);
+        File directory = testFile.getParentFile();
+
+        ChangedFile append = new ChangedFile(directory, testFile, APPEND, previous, current);
+        MappedByteBuffer mapped = append.map();
+        assertEquals("line 1\n", StandardCharsets.UTF_8.decode(mapped).toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChangedFile modify = new ChangedFile(directory, testFile, MODIFY, previous, current);
+        assertEquals(14, modify.transferTo(Channels.newChannel(out)));
+        assertEquals("header\nline 1\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChannelIsSharedUntilTheLastLeaseIsClosed() throws IOException {
+        ChangedFile changedFile = new ChangedFile(testFile.getParentFile(), testFile, MODIFY);
+        int openChannels = SharedFileChannel.getOpenChannelCount();
+        SharedFileChannel first = changedFile.openChannel();
+        try (SharedFileChannel second = changedFile.openChannel()) {
+            try {
+                assertSame(first.getChannel(), second.getChannel());
+                assertEquals(openChannels + 1, SharedFileChannel.getOpenChannelCount());
+            } finally {
+                first.close();
+            }
+            assertTrue(second.getChannel().isOpen());
+        }
+        assertEquals(openChannels, SharedFileChannel.getOpenChannelCount());
+    }
+
+    @Test
+    public void testStaleChannelsAreNotShared() throws IOException {
+        File file = Files.createTempFile("ChangedFileTest", ".csv").toFile();
+        Path replacement = file.toPath().resolveSibling(file.getName() + ".tmp");
+        ChangedFile changedFile = new ChangedFile(file.getParentFile(), file, MODIFY);
+        int openChannels = SharedFileChannel.getOpenChannelCount();
+        try {
+            Files.writeString(file.toPath(), "old");
+            try (SharedFileChannel replaced = changedFile.openChannel()) {
+                Files.writeString(replacement, "new!");
+                Files.move(replacement, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                try (SharedFileChannel current = changedFile.openChannel()) {
+                    assertNotSame(replaced.getChannel(), current.getChannel());
+                    assertEquals(4, current.getChannel().size());
+                    assertEquals(openChannels + 2, SharedFileChannel.getOpenChannelCount());
+
+                    // Closed under the other leases, e.g. by an interrupted read
+                    current.getChannel().close();
+                    try (SharedFileChannel reopened = changedFile.openChannel()) {
+                        assertTrue(reopened.getChannel().isOpen());
+                    }
+                }
+            }
+            assertEquals(openChannels, SharedFileChannel.getOpenChannelCount());
+        } finally {
+            Files.deleteIfExists(replacement);
+            Assert.isTrue(file.delete(), "Failed to delete test file");
+        }
+    }
+}
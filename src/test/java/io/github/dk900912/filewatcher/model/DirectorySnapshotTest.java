@@ -0,0 +1,312 @@
+package io.github.dk900912.filewatcher.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.ADD;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DELETE;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DIRECTORY_ADDED;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.DIRECTORY_DELETED;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MODIFY;
+import static io.github.dk900912.filewatcher.model.ChangedFile.Type.MOVE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class DirectorySnapshotTest {
+
+    private Path testRoot;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        testRoot = Files.createTempDirectory("directory-snapshot-test");
+        Files.createDirectories(testRoot.resolve("a/b"));
+        Files.writeString(testRoot.resolve("root.txt"), "root");
+        Files.writeString(testRoot.resolve("a/a.txt"), "a");
+        Files.writeString(testRoot.resolve("a/b/b.txt"), "b");
+        // Move every directory out of the racy window so that reconciliation may trust their times
+        try (Stream<Path> pathStream = Files.walk(testRoot)) {
+            for (Path path : pathStream.filter(Files::isDirectory).toList()) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+            }
+        }
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(testRoot)) {
+            pathStream
+                    .sorted((a, b) -> -a.compareTo(b))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testDirectoryTimesAreRecorded() {
+        DirectorySnapshot snapshot = new DirectorySnapshot(testRoot.toFile());
+
+        assertEquals(3, snapshot.getFiles().size());
+        assertEquals(Set.of(testRoot.toFile(), testRoot.resolve("a").toFile(), testRoot.resolve("a/b").toFile()),
+                snapshot.getDirectoryTimes().keySet());
+        assertEquals(testRoot.resolve("a").toFile().lastModified(),
+                snapshot.getDirectoryTimes().get(testRoot.resolve("a").toFile()));
+    }
+
+    @Test
+    public void testReconcileMatchesFullWalk() throws IOException {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+
+        // Modification inside an unchanged directory, addition and deletion inside a changed one
+        Files.writeString(testRoot.resolve("a/b/b.txt"), "modified content");
+        Files.writeString(testRoot.resolve("a/added.txt"), "added");
+        Files.delete(testRoot.resolve("a/a.txt"));
+
+        DirectorySnapshot reconciled = DirectorySnapshot.reconcile(baseline);
+        DirectorySnapshot walked = new DirectorySnapshot(testRoot.toFile());
+
+        assertEquals(walked.getFiles(), reconciled.getFiles());
+        assertEquals(walked.getDirectoryTimes(), reconciled.getDirectoryTimes());
+        Set<String> changes = baseline.getChangedFiles(reconciled, null).getFiles().stream()
+                .map(changedFile -> changedFile.getRelativeName().replace(File.separatorChar, '/') + ":" + changedFile.getType())
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("a/b/b.txt:" + MODIFY, "a/added.txt:" + ADD, "a/a.txt:" + DELETE), changes);
+    }
+
+    @Test
+    public void testReconcileWithoutDirectoryTimesFallsBackToFullWalk() throws IOException {
+        DirectorySnapshot walked = new DirectorySnapshot(testRoot.toFile());
+        DirectorySnapshot legacy = new DirectorySnapshot(testRoot.toFile(), LocalDateTime.now(), walked.getFiles());
+        Files.writeString(testRoot.resolve("a/b/added.txt"), "added");
+
+        DirectorySnapshot reconciled = DirectorySnapshot.reconcile(legacy);
+
+        assertEquals(4, reconciled.getFiles().size());
+        assertTrue(reconciled.getFiles().stream()
+                .anyMatch(file -> file.getFile().equals(testRoot.resolve("a/b/added.txt").toFile())));
+    }
+
+    @Test
+    public void testChangedFilesCarrySnapshots() throws IOException {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        Files.writeString(testRoot.resolve("a/a.txt"), "modified");
+        Files.writeString(testRoot.resolve("added.txt"), "added");
+        Files.delete(testRoot.resolve("root.txt"));
+        DirectorySnapshot current = new DirectorySnapshot(testRoot.toFile());
+
+        for (ChangedFile changedFile : baseline.getChangedFiles(current, null).getFiles()) {
+            switch (changedFile.getType()) {
+                case MODIFY -> {
+                    assertEquals(1, changedFile.getPreviousSnapshot().getLength());
+                    assertEquals(8, changedFile.getCurrentSnapshot().getLength());
+                }
+                case ADD -> {
+                    assertNull(changedFile.getPreviousSnapshot());
+                    assertEquals(testRoot.resolve("added.txt").toFile().lastModified(),
+                            changedFile.getCurrentSnapshot().getLastModified());
+                }
+                case DELETE -> {
+                    assertEquals(4, changedFile.getPreviousSnapshot().getLength());
+                    assertNull(changedFile.getCurrentSnapshot());
+                }
+                default -> throw new AssertionError(changedFile);
+            }
+        }
+    }
+
+    @Test
+    public void testWholeDirectoriesAreReportedOnce() throws IOException {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        Files.createDirectories(testRoot.resolve("c/d"));
+        Files.writeString(testRoot.resolve("c/c.txt"), "c");
+        Files.writeString(testRoot.resolve("c/d/d1.txt"), "d1");
+        Files.writeString(testRoot.resolve("c/d/d2.txt"), "d2");
+        Files.writeString(testRoot.resolve("a/b/added.txt"), "added");
+        Files.delete(testRoot.resolve("root.txt"));
+        DirectorySnapshot current = new DirectorySnapshot(testRoot.toFile());
+        // Deleting "a" as a whole, "a/b/added.txt" included
+        DirectorySnapshot withoutA = new DirectorySnapshot(testRoot.toFile(), current.getTime(),
+                current.getFiles().stream().filter(file -> !file.getFile().toPath().startsWith(testRoot.resolve("a")))
+                        .collect(Collectors.toCollection(LinkedHashSet::new)),
+                current.getDirectoryTimes().entrySet().stream().filter(entry -> !entry.getKey().toPath().startsWith(testRoot.resolve("a")))
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+
+        Set<String> changes = describe(baseline.getChangedFiles(current, null, false, true));
+        assertEquals(Set.of("c:" + DIRECTORY_ADDED + "[c/c.txt, c/d/d1.txt, c/d/d2.txt]", "a/b/added.txt:" + ADD,
+                "root.txt:" + DELETE), changes);
+        changes = describe(current.getChangedFiles(withoutA, null, false, true));
+        assertEquals(Set.of("a:" + DIRECTORY_DELETED + "[a/a.txt, a/b/added.txt, a/b/b.txt]"), changes);
+        // Not requested
+        assertEquals(5, baseline.getChangedFiles(current, null, false, false).getFiles().size());
+    }
+
+    @Test
+    public void testCountChangesMatchesChangedFiles() throws IOException {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        Files.writeString(testRoot.resolve("a/a.txt"), "modified");
+        Files.writeString(testRoot.resolve("a/b/added.txt"), "added");
+        Files.delete(testRoot.resolve("root.txt"));
+        DirectorySnapshot current = new DirectorySnapshot(testRoot.toFile());
+
+        assertEquals(3, baseline.countChanges(current, null));
+        assertEquals(baseline.getChangedFiles(current, null).getFiles().size(), baseline.countChanges(current, null));
+        assertEquals(1, baseline.countChanges(current, file -> file.getName().startsWith("added")));
+        assertEquals(0, current.countChanges(new DirectorySnapshot(testRoot.toFile()), null));
+    }
+
+    @Test
+    public void testSlicesCoverTheTreeInTurn() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            Files.createDirectories(testRoot.resolve("s" + i));
+            Files.writeString(testRoot.resolve("s" + i + "/file.txt"), "original");
+        }
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        for (int i = 0; i < 8; i++) {
+            Files.writeString(testRoot.resolve("s" + i + "/file.txt"), "modified " + i);
+        }
+        Set<String> expected = describe(baseline.getChangedFiles(new DirectorySnapshot(testRoot.toFile()), null));
+
+        Set<String> changes = new LinkedHashSet<>();
+        DirectorySnapshot previous = baseline;
+        for (int slice = 0; slice < 3; slice++) {
+            DirectorySnapshot current = DirectorySnapshot.scanSlice(previous, slice, 3, IoRateLimiter.UNLIMITED);
+            for (String change : describe(previous.getChangedFiles(current, null))) {
+                assertEquals(slice, DirectorySnapshot.getSlice(testRoot.toFile(), testRoot.resolve(change.substring(0, change.indexOf(':'))).toFile(), 3));
+                changes.add(change);
+            }
+            previous = current;
+        }
+        assertEquals(expected, changes);
+        // Everything was covered
+        assertEquals(Set.of(), describe(previous.getChangedFiles(new DirectorySnapshot(testRoot.toFile()), null)));
+    }
+
+    @Test
+    public void testTriggersGateTheScan() throws IOException {
+        FileFilter triggers = file -> file.getName().equals("_SUCCESS");
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        Files.writeString(testRoot.resolve("a/b/part-0.csv"), "part-0");
+        Files.createDirectories(testRoot.resolve("batch"));
+        Files.writeString(testRoot.resolve("batch/part-1.csv"), "part-1");
+
+        for (Path path : List.of(testRoot, testRoot.resolve("a/b"), testRoot.resolve("batch"))) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+        }
+
+        // No trigger yet, the modified directories are listed once
+        DirectorySnapshot listed = DirectorySnapshot.scanTriggered(baseline, triggers, IoRateLimiter.UNLIMITED);
+        assertEquals(baseline, listed);
+        assertTrue(listed.getDirectoryTimes().containsKey(testRoot.resolve("batch").toFile()));
+        assertSame(listed, DirectorySnapshot.scanTriggered(listed, triggers, IoRateLimiter.UNLIMITED));
+
+        Files.writeString(testRoot.resolve("batch/_SUCCESS"), "");
+        DirectorySnapshot current = DirectorySnapshot.scanTriggered(listed, triggers, IoRateLimiter.UNLIMITED);
+        assertEquals(Set.of("batch/part-1.csv:ADD", "batch/_SUCCESS:ADD"), describe(baseline.getChangedFiles(current, null)));
+        assertEquals(current, DirectorySnapshot.scanTriggered(current, triggers, IoRateLimiter.UNLIMITED));
+
+        Files.writeString(testRoot.resolve("a/b/_SUCCESS"), "");
+        DirectorySnapshot next = DirectorySnapshot.scanTriggered(current, triggers, IoRateLimiter.UNLIMITED);
+        assertEquals(Set.of("a/b/part-0.csv:ADD", "a/b/_SUCCESS:ADD"), describe(current.getChangedFiles(next, null)));
+        assertEquals(new DirectorySnapshot(testRoot.toFile()), next);
+    }
+
+    @Test
+    public void testCancellableScansAreAbandoned() {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        ScanAbortedException exception = assertThrows(ScanAbortedException.class,
+                () -> new DirectorySnapshot(testRoot.toFile(), IoRateLimiter.UNLIMITED, Duration.ofMillis(-1)));
+        assertTrue(exception.getMessage().contains("deadline"));
+        assertEquals(baseline, new DirectorySnapshot(testRoot.toFile(), IoRateLimiter.UNLIMITED, Duration.ofMinutes(1)));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(ScanAbortedException.class, () -> DirectorySnapshot.reconcile(baseline, IoRateLimiter.UNLIMITED, null));
+            // Not cancellable
+            assertEquals(baseline, new DirectorySnapshot(testRoot.toFile()));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testRateLimitedReconciliationIsAbandonedWhileStatingFiles() throws IOException {
+        for (int i = 0; i < 40; i++) {
+            Files.writeString(testRoot.resolve("a/b/part-" + i + ".csv"), "part");
+        }
+        Files.setLastModifiedTime(testRoot.resolve("a/b"), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+
+        // No directory is listed again, the budget runs out on the stats
+        ScanAbortedException exception = assertThrows(ScanAbortedException.class,
+                () -> DirectorySnapshot.reconcile(baseline, new IoRateLimiter(10), Duration.ofMillis(500)));
+        assertTrue(exception.getMessage().contains("stat-ing"));
+    }
+
+    @Test
+    public void testMovesArePairedByFileKey() throws IOException {
+        DirectorySnapshot baseline = new DirectorySnapshot(testRoot.toFile());
+        Files.move(testRoot.resolve("a/a.txt"), testRoot.resolve("a/b/renamed.txt"), StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(testRoot.resolve("root.txt"));
+        DirectorySnapshot current = new DirectorySnapshot(testRoot.toFile());
+        // Not every file system provides file keys
+        if (current.getFiles().iterator().next().getFileKey() == null) {
+            return;
+        }
+
+        Set<ChangedFile> moves = baseline.getChangedFiles(current, null, true).getFiles();
+        assertEquals(Set.of(new ChangedFile(testRoot.toFile(), testRoot.resolve("a/b/renamed.txt").toFile(), testRoot.resolve("a/a.txt").toFile()),
+                new ChangedFile(testRoot.toFile(), testRoot.resolve("root.txt").toFile(), DELETE)), moves);
+        ChangedFile move = moves.stream().filter(changedFile -> changedFile.getType() == MOVE).findFirst().orElseThrow();
+        assertEquals(move.getPreviousSnapshot().getFileKey(), move.getCurrentSnapshot().getFileKey());
+
+        // Legacy behaviour
+        Set<String> changes = baseline.getChangedFiles(current, null, false).getFiles().stream()
+                .map(changedFile -> changedFile.getRelativeName().replace(File.separatorChar, '/') + ":" + changedFile.getType())
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("a/b/renamed.txt:" + ADD, "a/a.txt:" + DELETE, "root.txt:" + DELETE), changes);
+    }
+
+    private Set<String> describe(ChangedFiles changedFiles) {
+        return changedFiles.getFiles().stream()
+                .map(changedFile -> {
+                    String description = changedFile.getRelativeName().replace(File.separatorChar, '/') + ":" + changedFile.getType();
+                    if (changedFile.getType().isDirectoryChange()) {
+                        List<String> members = new ArrayList<>();
+                        changedFile.getMembers().forEach(member -> members.add(member.getRelativeName().replace(File.separatorChar, '/')));
+                        Collections.sort(members);
+                        description += members;
+                    }
+                    return description;
+                })
+                .collect(Collectors.toSet());
+    }
+}
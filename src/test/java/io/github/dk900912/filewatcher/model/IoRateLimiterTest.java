@@ -0,0 +1,52 @@
+package io.github.dk900912.filewatcher.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author dukui
+ */
+public class IoRateLimiterTest {
+
+    @Test
+    public void testBurstThenRate() {
+        IoRateLimiter rateLimiter = new IoRateLimiter(100);
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.acquire();
+        }
+        assertEquals(0, rateLimiter.getThrottledNanos());
+
+        for (int i = 0; i < 50; i++) {
+            rateLimiter.acquire();
+        }
+        // 50 more operations at 100 per second
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) >= 450);
+        assertTrue(rateLimiter.getThrottledNanos() > 0);
+    }
+
+    @Test
+    public void testInterruptedThreadDoesNotWait() {
+        IoRateLimiter rateLimiter = new IoRateLimiter(1);
+        rateLimiter.acquire();
+        Thread.currentThread().interrupt();
+        try {
+            long startedAt = System.nanoTime();
+            rateLimiter.acquire();
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) < 500);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testPermitsPerSecondMustBePositive() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> new IoRateLimiter(0));
+        assertEquals("PermitsPerSecond must be positive", exception.getMessage());
+    }
+}